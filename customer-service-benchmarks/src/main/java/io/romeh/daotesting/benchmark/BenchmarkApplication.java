@@ -0,0 +1,48 @@
+package io.romeh.daotesting.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import io.romeh.daotesting.config.CacheConfig;
+import io.romeh.daotesting.config.DbConfig;
+import io.romeh.daotesting.dao.CustomerJdbcRepository;
+import io.romeh.daotesting.dao.CustomerRepository;
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.service.CustomerService;
+
+/**
+ * @author romeh
+ * the customer service stack without the web layer , the db is the embedded postgres process started by DbConfig and migrated by liquibase ,
+ * the rest of the configuration comes from the application.properties of the service
+ */
+@Configuration
+@EnableAutoConfiguration
+@EnableJpaRepositories(basePackageClasses = CustomerRepository.class)
+@EntityScan(basePackageClasses = Customer.class)
+@Import({DbConfig.class, CacheConfig.class, CustomerService.class, CustomerJdbcRepository.class})
+public class BenchmarkApplication {
+
+	/**
+	 * @param properties extra key=value properties overriding the service ones
+	 * @return the started context , to be closed at the end of the trial so the embedded postgres process is stopped
+	 */
+	public static ConfigurableApplicationContext start(String... properties) {
+		// as command line arguments , the builder properties are only defaults which the application.properties ones win over
+		List<String> arguments = new ArrayList<>(Arrays.asList("--spring.jpa.show-sql=false", "--logging.level.root=WARN",
+				"--logging.level.liquibase=WARN"));
+		Arrays.stream(properties).map(property -> "--" + property).forEach(arguments::add);
+		return new SpringApplicationBuilder(BenchmarkApplication.class)
+				.web(WebApplicationType.NONE)
+				.run(arguments.toArray(new String[0]));
+	}
+}
@@ -0,0 +1,49 @@
+package io.romeh.daotesting.benchmark;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @author romeh
+ * the main class of target/benchmarks.jar , it takes the usual jmh command line options ,
+ * the results are written as json to jmh-result.json next to the jar , in the target directory , unless -rf / -rff are given ,
+ * so runs of two releases can be compared once archived out of the source tree
+ */
+public class CustomerBenchmarks {
+
+	static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException, URISyntaxException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		if (commandLine.shouldHelp()) {
+			commandLine.showHelp();
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		if (!commandLine.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (!commandLine.getResult().hasValue()) {
+			Path jar = Paths.get(CustomerBenchmarks.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			options.result(jar.resolveSibling(DEFAULT_RESULT_FILE).toString());
+		}
+
+		Runner runner = new Runner(options.build());
+		if (commandLine.shouldList()) {
+			runner.list();
+			return;
+		}
+		runner.run();
+	}
+}
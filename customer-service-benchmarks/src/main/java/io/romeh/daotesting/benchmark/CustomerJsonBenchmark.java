@@ -0,0 +1,133 @@
+package io.romeh.daotesting.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import io.romeh.daotesting.rest.dto.CustomerDto;
+import io.romeh.daotesting.rest.dto.CustomerMapperImpl;
+
+/**
+ * @author romeh
+ * jackson serialization of the customer dtos , with an object mapper configured like the spring boot one used by the rest api ,
+ * the customer dto serializer against the reflection based bean serializer (the bean* benchmarks) , into new byte arrays
+ * and into a reused response buffer like the servlet output buffer , and the cached json of GET /customers/{id} copied as it is ,
+ * run it with -prof gc to get the allocated bytes per operation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerJsonBenchmark {
+
+	private static final int PAGE_SIZE = 100;
+
+	private ObjectWriter customerWriter;
+	private ObjectWriter customersPageWriter;
+	private ObjectWriter beanCustomerWriter;
+	private ObjectWriter beanCustomersPageWriter;
+	private final ByteArrayOutputStream responseBuffer = new ByteArrayOutputStream(64 * 1024);
+	private ObjectReader customerReader;
+	private CustomerDto customerDto;
+	private List<CustomerDto> customersPage;
+	private byte[] customerJson;
+
+	@Setup
+	public void setUp() throws IOException {
+		ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		CustomerMapperImpl customerMapper = new CustomerMapperImpl();
+		customerWriter = objectMapper.writerFor(CustomerDto.class);
+		customersPageWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, CustomerDto.class));
+		// the annotations are ignored , so the customers go through the bean serializer instead of the one of @JsonSerialize
+		ObjectMapper beanObjectMapper = Jackson2ObjectMapperBuilder.json().build().configure(MapperFeature.USE_ANNOTATIONS, false);
+		beanCustomerWriter = beanObjectMapper.writerFor(CustomerDto.class);
+		beanCustomersPageWriter = beanObjectMapper.writerFor(beanObjectMapper.getTypeFactory().constructCollectionType(List.class, CustomerDto.class));
+		customerReader = objectMapper.readerFor(CustomerDto.class);
+		customerDto = customerMapper.mapCustomerToDto(Customers.customer(1));
+		customersPage = LongStream.rangeClosed(1, PAGE_SIZE).mapToObj(Customers::customer).map(customerMapper::mapCustomerToDto)
+				.collect(Collectors.toList());
+		customerJson = customerWriter.writeValueAsBytes(customerDto);
+	}
+
+	@Benchmark
+	public byte[] serializeCustomer() throws IOException {
+		return customerWriter.writeValueAsBytes(customerDto);
+	}
+
+	@Benchmark
+	public byte[] serializeCustomersPage() throws IOException {
+		return customersPageWriter.writeValueAsBytes(customersPage);
+	}
+
+	@Benchmark
+	public byte[] beanSerializeCustomer() throws IOException {
+		return beanCustomerWriter.writeValueAsBytes(customerDto);
+	}
+
+	@Benchmark
+	public byte[] beanSerializeCustomersPage() throws IOException {
+		return beanCustomersPageWriter.writeValueAsBytes(customersPage);
+	}
+
+	@Benchmark
+	public int writeCustomerResponse() throws IOException {
+		responseBuffer.reset();
+		customerWriter.writeValue(responseBuffer, customerDto);
+		return responseBuffer.size();
+	}
+
+	@Benchmark
+	public int beanWriteCustomerResponse() throws IOException {
+		responseBuffer.reset();
+		beanCustomerWriter.writeValue(responseBuffer, customerDto);
+		return responseBuffer.size();
+	}
+
+	@Benchmark
+	public int writeCachedCustomerResponse() throws IOException {
+		responseBuffer.reset();
+		responseBuffer.write(customerJson);
+		return responseBuffer.size();
+	}
+
+	@Benchmark
+	public int writeCustomersPageResponse() throws IOException {
+		responseBuffer.reset();
+		customersPageWriter.writeValue(responseBuffer, customersPage);
+		return responseBuffer.size();
+	}
+
+	@Benchmark
+	public int beanWriteCustomersPageResponse() throws IOException {
+		responseBuffer.reset();
+		beanCustomersPageWriter.writeValue(responseBuffer, customersPage);
+		return responseBuffer.size();
+	}
+
+	@Benchmark
+	public CustomerDto deserializeCustomer() throws IOException {
+		return customerReader.readValue(customerJson);
+	}
+}
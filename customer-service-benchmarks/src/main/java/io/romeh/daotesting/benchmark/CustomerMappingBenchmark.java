@@ -0,0 +1,65 @@
+package io.romeh.daotesting.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.dto.CustomerDto;
+import io.romeh.daotesting.rest.dto.CustomerMapper;
+import io.romeh.daotesting.rest.dto.CustomerMapperImpl;
+
+/**
+ * @author romeh
+ * the mapstruct entity and dto mappings of the rest api , a single customer each way and a listing page of 100 customers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerMappingBenchmark {
+
+	private static final int PAGE_SIZE = 100;
+
+	private CustomerMapper customerMapper;
+	private Customer customer;
+	private CustomerDto customerDto;
+	private List<Customer> customersPage;
+
+	@Setup
+	public void setUp() {
+		customerMapper = new CustomerMapperImpl();
+		customer = Customers.customer(1);
+		customerDto = customerMapper.mapCustomerToDto(customer);
+		customersPage = LongStream.rangeClosed(1, PAGE_SIZE).mapToObj(Customers::customer).collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public CustomerDto mapCustomerToDto() {
+		return customerMapper.mapCustomerToDto(customer);
+	}
+
+	@Benchmark
+	public Customer mapDtoToCustomer() {
+		return customerMapper.mapDtoToCustomer(customerDto);
+	}
+
+	@Benchmark
+	public List<CustomerDto> mapCustomersPageToDtos() {
+		return customerMapper.mapCustomersToDtos(customersPage);
+	}
+}
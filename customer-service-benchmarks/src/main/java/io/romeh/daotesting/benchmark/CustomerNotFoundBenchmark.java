@@ -0,0 +1,97 @@
+package io.romeh.daotesting.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import io.romeh.daotesting.dao.CustomerRepository;
+import io.romeh.daotesting.rest.dto.CustomerDto;
+import io.romeh.daotesting.rest.dto.CustomerMapper;
+import io.romeh.daotesting.rest.dto.CustomerMapperImpl;
+import io.romeh.daotesting.rest.dto.ErrorResponse;
+import io.romeh.daotesting.service.CustomerService;
+
+/**
+ * @author romeh
+ * the cost of a customer lookup miss , the former path threw an IllegalStateException which the rest api mapped to an ErrorResponse ,
+ * the current one returns an empty optional mapped to a 404 response entity ,
+ * the exception cost grows with the stack depth so the misses are measured at the jmh depth and 100 frames deeper like in a servlet request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerNotFoundBenchmark {
+
+	@Param({"0", "100"})
+	private int stackDepth;
+
+	private final long missingId = 42;
+	private CustomerRepository customerRepository;
+	private CustomerService customerService;
+	private CustomerMapper customerMapper;
+
+	@Setup
+	public void setUp() {
+		customerRepository = StubRepositories.emptyCustomerRepository();
+		customerService = new CustomerService(customerRepository, null, false, 5000, null, null);
+		customerMapper = new CustomerMapperImpl();
+	}
+
+	@Benchmark
+	public Object exceptionMissPath() {
+		return atDepth(stackDepth, () -> {
+			try {
+				return customerMapper.mapCustomerToDto(customerRepository.findById(missingId)
+						.orElseThrow(() -> new IllegalStateException("the customer is not there")));
+			} catch (IllegalStateException exception) {
+				return ErrorResponse.builder().message(exception.getLocalizedMessage()).build();
+			}
+		});
+	}
+
+	@Benchmark
+	public Object optionalMissPath() {
+		return atDepth(stackDepth, () -> {
+			Optional<CustomerDto> customer = customerService.findCustomerById(missingId).map(customerMapper::mapCustomerToDto);
+			return ResponseEntity.of(customer);
+		});
+	}
+
+	private static Object atDepth(int depth, Supplier<Object> call) {
+		return depth == 0 ? call.get() : atDepth(depth - 1, call);
+	}
+
+	/**
+	 * db free repositories for the benchmarks
+	 */
+	static final class StubRepositories {
+
+		private StubRepositories() {
+		}
+
+		/**
+		 * @return a customer repository which never finds anything
+		 */
+		static CustomerRepository emptyCustomerRepository() {
+			return (CustomerRepository) Proxy.newProxyInstance(CustomerRepository.class.getClassLoader(),
+					new Class<?>[]{CustomerRepository.class}, (proxy, method, args) -> Optional.empty());
+		}
+	}
+}
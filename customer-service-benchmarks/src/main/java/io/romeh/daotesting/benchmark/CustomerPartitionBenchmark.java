@@ -0,0 +1,108 @@
+package io.romeh.daotesting.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author romeh
+ * the lookups by id and the inserts of the customer table , plain vs hash partitioned on id like the partitionCustomerByIdHash
+ * change set , on tables of the benchmark seeded with rows customers ,
+ * the embedded postgres of the service is older than the hash partitioning (postgres 11) so the tables are created on the postgres 11+
+ * given by -Dcustomer.benchmark.db.url (and .user / .password) in -jvmArgsAppend , the default rows keep the seeding short ,
+ * pass -p rows=100000000 for the sizes where the index of the plain table does not fit in memory anymore
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerPartitionBenchmark {
+
+	private static final int PARTITIONS = 16;
+
+	@Param({"plain", "hash"})
+	private String table;
+
+	@Param({"1000000"})
+	private long rows;
+
+	private Connection connection;
+	private PreparedStatement byId;
+	private PreparedStatement insert;
+	private String tableName;
+	private final AtomicLong nextId = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void createTable() throws SQLException {
+		connection = DriverManager.getConnection(System.getProperty("customer.benchmark.db.url", "jdbc:postgresql://localhost:5432/postgres"),
+				System.getProperty("customer.benchmark.db.user", "postgres"), System.getProperty("customer.benchmark.db.password", "postgres"));
+		tableName = "customer_benchmark_" + table;
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DROP TABLE IF EXISTS " + tableName);
+			String columns = "(id bigint NOT NULL , address varchar(255) , name varchar(255) , is_active boolean NOT NULL , version bigint NOT NULL DEFAULT 0)";
+			if ("hash".equals(table)) {
+				statement.execute("CREATE TABLE " + tableName + " " + columns + " PARTITION BY HASH (id)");
+				for (int remainder = 0; remainder < PARTITIONS; remainder++) {
+					statement.execute("CREATE TABLE " + tableName + "_p" + remainder + " PARTITION OF " + tableName
+							+ " FOR VALUES WITH (MODULUS " + PARTITIONS + ", REMAINDER " + remainder + ")");
+				}
+			} else {
+				statement.execute("CREATE TABLE " + tableName + " " + columns);
+			}
+			statement.execute("INSERT INTO " + tableName + " SELECT id , 'Brussels' , 'partition-' || id , true FROM generate_series(1, " + rows + ") id");
+			statement.execute("ALTER TABLE " + tableName + " ADD PRIMARY KEY (id)");
+			statement.execute("CREATE INDEX ON " + tableName + " (name)");
+			statement.execute("ANALYZE " + tableName);
+		}
+		nextId.set(rows);
+		byId = connection.prepareStatement("SELECT id , address , name , is_active , version FROM " + tableName + " WHERE id = ?");
+		insert = connection.prepareStatement("INSERT INTO " + tableName + " (id , address , name , is_active) VALUES (? , 'Brussels' , ? , true)");
+	}
+
+	@TearDown(Level.Trial)
+	public void dropTable() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DROP TABLE " + tableName);
+		} finally {
+			connection.close();
+		}
+	}
+
+	@Benchmark
+	public String byId() throws SQLException {
+		byId.setLong(1, ThreadLocalRandom.current().nextLong(rows) + 1);
+		try (ResultSet customer = byId.executeQuery()) {
+			return customer.next() ? customer.getString(3) : null;
+		}
+	}
+
+	@Benchmark
+	public int insert() throws SQLException {
+		long id = nextId.incrementAndGet();
+		insert.setLong(1, id);
+		insert.setString(2, "partition-" + id);
+		return insert.executeUpdate();
+	}
+}
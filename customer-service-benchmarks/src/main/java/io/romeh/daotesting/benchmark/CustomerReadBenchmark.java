@@ -0,0 +1,119 @@
+package io.romeh.daotesting.benchmark;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.romeh.daotesting.dao.CustomerRepository;
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.dto.CustomerDto;
+import io.romeh.daotesting.rest.dto.CustomerMapper;
+import io.romeh.daotesting.rest.dto.CustomerMapperImpl;
+
+/**
+ * @author romeh
+ * the db reads of GET /customers/{id} on a cache miss and of GET /customers against the embedded postgres , per request ,
+ * managed entities in a read write transaction copied by the mapper (the reads before the read only transactions) ,
+ * entities in a read only transaction copied by the mapper , and for the pages dtos read straight from the query ,
+ * run it with -prof gc to get the allocated bytes per request next to the latency
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerReadBenchmark {
+
+	private static final int CUSTOMERS = 1000;
+	private static final int SEED_BATCH_SIZE = 500;
+
+	@Param({"100"})
+	private int pageSize;
+
+	private ConfigurableApplicationContext context;
+	private CustomerRepository customerRepository;
+	private CustomerMapper customerMapper;
+	private TransactionTemplate readWriteTransaction;
+	private long[] ids;
+
+	@Setup(Level.Trial)
+	public void startService() {
+		context = BenchmarkApplication.start();
+		customerRepository = context.getBean(CustomerRepository.class);
+		customerMapper = new CustomerMapperImpl();
+		readWriteTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+		String namePrefix = "read-" + System.currentTimeMillis() + "-";
+		ids = new long[CUSTOMERS];
+		for (int from = 0; from < CUSTOMERS; from += SEED_BATCH_SIZE) {
+			List<Customer> batch = Customers.newCustomers(namePrefix, from, SEED_BATCH_SIZE);
+			customerRepository.saveAll(batch);
+			for (int i = 0; i < batch.size(); i++) {
+				ids[from + i] = batch.get(i).getId();
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stopService() {
+		context.close();
+	}
+
+	@Benchmark
+	public Optional<CustomerDto> byIdManagedEntity() {
+		long id = randomId();
+		return readWriteTransaction.execute(status -> customerRepository.findById(id).map(customerMapper::mapCustomerToDto));
+	}
+
+	@Benchmark
+	public Optional<CustomerDto> byIdReadOnlyEntity() {
+		return customerRepository.findById(randomId()).map(customerMapper::mapCustomerToDto);
+	}
+
+	@Benchmark
+	public List<CustomerDto> pageManagedEntities() {
+		long afterId = randomAfterId();
+		return readWriteTransaction.execute(status ->
+				customerMapper.mapCustomersToDtos(customerRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, pageSize))));
+	}
+
+	@Benchmark
+	public List<CustomerDto> pageReadOnlyEntities() {
+		return customerMapper.mapCustomersToDtos(customerRepository.findByIdGreaterThanOrderByIdAsc(randomAfterId(), PageRequest.of(0, pageSize)));
+	}
+
+	@Benchmark
+	public List<CustomerDto> pageDtoProjection() {
+		return customerRepository.findDtosAfter(randomAfterId(), PageRequest.of(0, pageSize));
+	}
+
+	private long randomId() {
+		return ids[ThreadLocalRandom.current().nextInt(CUSTOMERS)];
+	}
+
+	/**
+	 * @return an id followed by at least a full page of the seeded customers
+	 */
+	private long randomAfterId() {
+		return ids[ThreadLocalRandom.current().nextInt(CUSTOMERS - pageSize)];
+	}
+}
@@ -0,0 +1,64 @@
+package io.romeh.daotesting.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import io.romeh.daotesting.service.CustomerService;
+
+/**
+ * @author romeh
+ * customer save throughput against the embedded postgres in saved rows per second ,
+ * one transaction per customer like POST /customers and one transaction per batch like POST /customers/bulk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerSaveBenchmark {
+
+	private static final int BATCH_SIZE = 100;
+	private static final String SAVED_NAME_PREFIX = "saved-";
+
+	private final AtomicLong customerIndex = new AtomicLong();
+	private ConfigurableApplicationContext context;
+	private CustomerService customerService;
+
+	@Setup(Level.Trial)
+	public void startService() {
+		context = BenchmarkApplication.start();
+		customerService = context.getBean(CustomerService.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void stopService() {
+		context.close();
+	}
+
+	@Benchmark
+	public void createCustomer() {
+		customerService.createCustomer(Customers.newCustomer(SAVED_NAME_PREFIX + customerIndex.incrementAndGet()));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public void createCustomersBatch() {
+		customerService.createCustomers(Customers.newCustomers(SAVED_NAME_PREFIX, customerIndex.getAndAdd(BATCH_SIZE), BATCH_SIZE));
+	}
+}
@@ -0,0 +1,81 @@
+package io.romeh.daotesting.benchmark;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.service.CustomerService;
+
+/**
+ * @author romeh
+ * customer service lookups against the embedded postgres , random customers out of the saved ones ,
+ * with the caffeine caches , all the customers fit in them so after the warmup the lookups are cache hits ,
+ * and without any cache so every lookup is a db round trip
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerServiceBenchmark {
+
+	private static final int CUSTOMERS = 1000;
+	private static final int SEED_BATCH_SIZE = 500;
+
+	@Param({"caffeine", "none"})
+	private String cacheType;
+
+	private ConfigurableApplicationContext context;
+	private CustomerService customerService;
+	private String namePrefix;
+	private long[] ids;
+
+	@Setup(Level.Trial)
+	public void startService() {
+		context = BenchmarkApplication.start("spring.cache.type=" + cacheType);
+		customerService = context.getBean(CustomerService.class);
+		// unique names even if the db already has customers from a previous run
+		namePrefix = "lookup-" + System.currentTimeMillis() + "-";
+		ids = new long[CUSTOMERS];
+		for (int from = 0; from < CUSTOMERS; from += SEED_BATCH_SIZE) {
+			List<Customer> batch = Customers.newCustomers(namePrefix, from, SEED_BATCH_SIZE);
+			customerService.createCustomers(batch);
+			for (int i = 0; i < batch.size(); i++) {
+				ids[from + i] = batch.get(i).getId();
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stopService() {
+		context.close();
+	}
+
+	@Benchmark
+	public Optional<Customer> findCustomerById() {
+		return customerService.findCustomerById(ids[ThreadLocalRandom.current().nextInt(CUSTOMERS)]);
+	}
+
+	@Benchmark
+	public Optional<Customer> findCustomerByName() {
+		return customerService.findCustomerByName(namePrefix + ThreadLocalRandom.current().nextInt(CUSTOMERS));
+	}
+}
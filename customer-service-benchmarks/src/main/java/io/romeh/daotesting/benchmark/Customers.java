@@ -0,0 +1,40 @@
+package io.romeh.daotesting.benchmark;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import io.romeh.daotesting.domain.Customer;
+
+/**
+ * @author romeh
+ * customer test data of the benchmarks
+ */
+final class Customers {
+
+	private Customers() {
+	}
+
+	/**
+	 * @param id the id of the customer , also used in its name
+	 * @return a customer as loaded from the db
+	 */
+	static Customer customer(long id) {
+		return Customer.builder().id(id).name("customer-" + id).address("Rue de la Loi " + id + " , Brussels").is_active(true).build();
+	}
+
+	/**
+	 * @param name the customer name
+	 * @return a not yet saved customer , its id is generated on save
+	 */
+	static Customer newCustomer(String name) {
+		return Customer.builder().name(name).address("Rue de la Loi , Brussels").is_active(true).build();
+	}
+
+	/**
+	 * @return count not yet saved customers named namePrefix followed by their index , starting at fromIndex
+	 */
+	static List<Customer> newCustomers(String namePrefix, long fromIndex, int count) {
+		return LongStream.range(fromIndex, fromIndex + count).mapToObj(index -> newCustomer(namePrefix + index)).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,68 @@
+package io.romeh.daotesting.benchmark;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * @author romeh
+ * the throughput of the short transactions behind GET /customers/{id} , 8 threads , on the data source of the service ,
+ * the non pooled DriverManagerDataSource (db.pool.enabled=false) opening a physical connection per transaction
+ * vs the pooled Hikari data source
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class DataSourceBenchmark {
+
+	@Param({"false", "true"})
+	private boolean pooled;
+
+	private ConfigurableApplicationContext context;
+	private DataSource dataSource;
+
+	@Setup(Level.Trial)
+	public void startService() {
+		context = BenchmarkApplication.start("db.pool.enabled=" + pooled, "spring.datasource.hikari.maximum-pool-size=8");
+		dataSource = context.getBean(DataSource.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void stopService() {
+		context.close();
+	}
+
+	@Benchmark
+	public int shortTransaction() throws SQLException {
+		try (Connection connection = dataSource.getConnection();
+		     Statement statement = connection.createStatement();
+		     ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+			resultSet.next();
+			return resultSet.getInt(1);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package io.romeh.daotesting.benchmark;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.resilience.HedgeConfig;
+import io.romeh.daotesting.resilience.HedgedExecutor;
+import io.romeh.daotesting.resilience.ShardedScheduledExecutorService;
+
+/**
+ * @author romeh
+ * the latency distribution of a customer read against a slow db stub , 1 ms per read but 2% of the reads stall for 20 ms ,
+ * read directly and through the hedged executor hedging after the p95 read latency , check the p0.99 of the sample time results ,
+ * the stub stalls are independent of each other so a hedged read rarely stalls twice
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class HedgedReadBenchmark {
+
+	private static final long READ_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long STALL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+	private static final double STALL_RATIO = 0.02;
+
+	@Param({"direct", "hedged"})
+	private String read;
+
+	private final Customer customer = Customers.customer(1);
+	private ExecutorService attemptExecutor;
+	private ShardedScheduledExecutorService hedgeScheduler;
+	private HedgedExecutor hedgedExecutor;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		attemptExecutor = Executors.newFixedThreadPool(16);
+		hedgeScheduler = new ShardedScheduledExecutorService("hedge-timer-");
+		HedgeConfig hedgeConfig = HedgeConfig.custom()
+				.delayPercentile(0.95)
+				.delayBounds(Duration.ofMillis(1), Duration.ofSeconds(1))
+				.maxHedgeRatio(0.1, Duration.ofSeconds(10))
+				.build();
+		hedgedExecutor = HedgedExecutor.of("customerReads", hedgeConfig, attemptExecutor, hedgeScheduler, new SimpleMeterRegistry());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		attemptExecutor.shutdownNow();
+		hedgeScheduler.shutdownNow();
+	}
+
+	@Benchmark
+	public Customer findCustomer() {
+		return "direct".equals(read) ? slowDbRead() : hedgedExecutor.executeSupplier(this::slowDbRead).join();
+	}
+
+	private Customer slowDbRead() {
+		boolean stall = ThreadLocalRandom.current().nextDouble() < STALL_RATIO;
+		LockSupport.parkNanos(stall ? STALL_NANOS : READ_NANOS);
+		return customer;
+	}
+}
@@ -0,0 +1,83 @@
+package io.romeh.daotesting.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.ProxyFactory;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.romeh.daotesting.config.MethodTimingConfig;
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.dto.CustomerDto;
+import io.romeh.daotesting.rest.dto.CustomerMapper;
+import io.romeh.daotesting.rest.dto.CustomerMapperImpl;
+
+/**
+ * @author romeh
+ * the cost of the method timers on the cheapest hot path call , a customer mapping , with the percentile histogram and percentiles
+ * of the service configuration , compare the timed call with a proxy without the timing advisor to get the timer cost alone ,
+ * run it with -prof gc to check the recording does not allocate
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodTimingBenchmark {
+
+	private CustomerMapper plainMapper;
+	private CustomerMapper proxiedMapper;
+	private CustomerMapper timedMapper;
+	private Customer customer;
+
+	@Setup
+	public void setUp() {
+		PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+		meterRegistry.config().meterFilter(new MeterFilter() {
+			@Override
+			public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+				return DistributionStatisticConfig.builder()
+						.percentilesHistogram(true)
+						.percentiles(0.5, 0.95, 0.99)
+						.build()
+						.merge(config);
+			}
+		});
+
+		plainMapper = new CustomerMapperImpl();
+		proxiedMapper = (CustomerMapper) new ProxyFactory(plainMapper).getProxy();
+		ProxyFactory timedProxyFactory = new ProxyFactory(plainMapper);
+		timedProxyFactory.addAdvisor(MethodTimingConfig.timingAdvisor(MethodTimingConfig.MAPPER_METHODS, "mapper", () -> meterRegistry));
+		timedMapper = (CustomerMapper) timedProxyFactory.getProxy();
+		customer = Customers.customer(1);
+	}
+
+	@Benchmark
+	public CustomerDto plain() {
+		return plainMapper.mapCustomerToDto(customer);
+	}
+
+	@Benchmark
+	public CustomerDto proxied() {
+		return proxiedMapper.mapCustomerToDto(customer);
+	}
+
+	@Benchmark
+	public CustomerDto timed() {
+		return timedMapper.mapCustomerToDto(customer);
+	}
+}
@@ -0,0 +1,99 @@
+package io.romeh.daotesting.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.romeh.daotesting.resilience.ShardedScheduledExecutorService;
+
+/**
+ * @author romeh
+ * the time to fire a burst of pending retries , scheduled over a 100 ms window 50 ms ahead , with one single thread scheduler
+ * like in AsyncRetryTest and with the sharded one , each fired retry starts its next attempt which costs attemptWork cpu tokens ,
+ * the closer to 150 ms the better , the timer lateness percentiles of each iteration are logged as well
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RetrySchedulerBenchmark {
+
+	private static final Logger log = LoggerFactory.getLogger(RetrySchedulerBenchmark.class);
+	private static final long FIRST_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	@Param({"single", "sharded"})
+	private String scheduler;
+
+	@Param({"100000"})
+	private int pendingRetries;
+
+	@Param({"0", "1000"})
+	private int attemptWork;
+
+	private ScheduledExecutorService retryScheduler;
+	private long[] latenessNanos;
+
+	@Setup(Level.Trial)
+	public void startScheduler() {
+		retryScheduler = "single".equals(scheduler)
+				? Executors.newSingleThreadScheduledExecutor()
+				: new ShardedScheduledExecutorService("retry-scheduler-");
+		latenessNanos = new long[pendingRetries];
+	}
+
+	@TearDown(Level.Trial)
+	public void stopScheduler() {
+		retryScheduler.shutdownNow();
+	}
+
+	@TearDown(Level.Iteration)
+	public void logLateness() {
+		long[] sorted = latenessNanos.clone();
+		Arrays.sort(sorted);
+		log.info("{} scheduler timer lateness p50 {} ms , p99 {} ms , max {} ms", scheduler, millis(sorted[sorted.length / 2]),
+				millis(sorted[(int) (sorted.length * 0.99)]), millis(sorted[sorted.length - 1]));
+	}
+
+	@Benchmark
+	public void fireRetries() throws InterruptedException {
+		CountDownLatch fired = new CountDownLatch(pendingRetries);
+		long start = System.nanoTime();
+		for (int i = 0; i < pendingRetries; i++) {
+			int retry = i;
+			long dueNanos = start + FIRST_DELAY_NANOS + ThreadLocalRandom.current().nextLong(WINDOW_NANOS);
+			retryScheduler.schedule(() -> {
+				latenessNanos[retry] = System.nanoTime() - dueNanos;
+				Blackhole.consumeCPU(attemptWork);
+				fired.countDown();
+			}, dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+		fired.await();
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.3f", nanos / 1_000_000d);
+	}
+}
@@ -0,0 +1,106 @@
+package io.romeh.daotesting.config;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * @author romeh
+ * a cache evicted only once the transaction of the eviction committed , so a read in between can not cache the row the transaction
+ * is about to change , and not filled by a read which missed the cache before an eviction , so a read of the old row still
+ * running when the change commits can not cache it after its eviction , the evictions are counted by stripe of keys ,
+ * so an eviction only drops the fills of the keys of its stripe , a clear drops all of them ,
+ * the fills are done at once , not after the commit , a read does not change what is cached ,
+ * it is still a TransactionAwareCacheDecorator so the cache metrics see the target cache through it
+ */
+public class AfterCommitEvictingCache extends TransactionAwareCacheDecorator {
+
+	private static final int STRIPES = 1024;
+
+	/**
+	 * the invalidations count of every stripe of keys
+	 */
+	private final AtomicLongArray invalidations = new AtomicLongArray(STRIPES);
+	/**
+	 * the key of the last miss of the thread and the invalidations count of its stripe at that miss , a @Cacheable method fills the cache
+	 * on the thread of its miss
+	 */
+	private final ThreadLocal<Object[]> lastMiss = new ThreadLocal<>();
+
+	public AfterCommitEvictingCache(Cache targetCache) {
+		super(targetCache);
+	}
+
+	@Override
+	@Nullable
+	public ValueWrapper get(Object key) {
+		ValueWrapper value = getTargetCache().get(key);
+		if (value == null) {
+			lastMiss.set(new Object[]{key, invalidations.get(stripe(key))});
+		}
+		return value;
+	}
+
+	@Override
+	public void put(Object key, @Nullable Object value) {
+		if (!invalidatedSinceMiss(key)) {
+			getTargetCache().put(key, value);
+		}
+	}
+
+	@Override
+	@Nullable
+	public ValueWrapper putIfAbsent(Object key, @Nullable Object value) {
+		return invalidatedSinceMiss(key) ? null : getTargetCache().putIfAbsent(key, value);
+	}
+
+	@Override
+	public void evict(Object key) {
+		afterCommit(() -> {
+			invalidations.incrementAndGet(stripe(key));
+			getTargetCache().evict(key);
+		});
+	}
+
+	@Override
+	public void clear() {
+		afterCommit(() -> {
+			for (int stripe = 0; stripe < STRIPES; stripe++) {
+				invalidations.incrementAndGet(stripe);
+			}
+			getTargetCache().clear();
+		});
+	}
+
+	/**
+	 * @return true if the fill of the key follows a miss of the thread and the stripe of the key was invalidated since ,
+	 * the value can be stale
+	 */
+	private boolean invalidatedSinceMiss(Object key) {
+		Object[] miss = lastMiss.get();
+		lastMiss.remove();
+		return miss != null && miss[0].equals(key) && (long) miss[1] != invalidations.get(stripe(key));
+	}
+
+	private static int stripe(Object key) {
+		int hash = key.hashCode();
+		return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+	}
+
+	private static void afterCommit(Runnable invalidation) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					invalidation.run();
+				}
+			});
+		} else {
+			invalidation.run();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package io.romeh.daotesting.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * @author romeh
+ * the executor running the db work of the async customer api , it is bounded so a slow db can not pile up unlimited work ,
+ * the calls rejected once the queue is full are answered with 503
+ */
+@Configuration
+@EnableAsync
+public class AsyncConfig {
+
+	public static final String CUSTOMER_DB_EXECUTOR = "customerDbExecutor";
+
+	/**
+	 * @param poolSize      the number of threads doing the db work , they mostly wait on the db so it can be above the cpu count
+	 * @param queueCapacity the number of db calls waiting for a free thread
+	 * @return the db work executor
+	 */
+	@Bean(name = CUSTOMER_DB_EXECUTOR)
+	public ThreadPoolTaskExecutor customerDbExecutor(@Value("${customers.async.pool-size:32}") int poolSize,
+	                                                 @Value("${customers.async.queue-capacity:1000}") int queueCapacity) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix("customer-db-");
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		return executor;
+	}
+}
@@ -0,0 +1,71 @@
+package io.romeh.daotesting.config;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.Nullable;
+
+/**
+ * @author romeh
+ * enable the in process customer caches , the caches size and ttl are configured by the spring.cache.* properties ,
+ * customerJsonById keeps the serialized json of the customers by id for GET /customers/{id} ,
+ * the caches of the cache manager are evicted after the commit of the transaction evicting them , see {@link AfterCommitEvictingCache}
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+	public static final String CUSTOMERS_BY_ID = "customersById";
+	public static final String CUSTOMERS_BY_NAME = "customersByName";
+	public static final String CUSTOMER_JSON_BY_ID = "customerJsonById";
+
+	/**
+	 * @return the post processor wrapping the cache manager , the auto configured one or a test one
+	 */
+	@Bean
+	public static BeanPostProcessor afterCommitEvictingCacheManagerPostProcessor() {
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				return bean instanceof CacheManager && !(bean instanceof AfterCommitEvictingCacheManager)
+						? new AfterCommitEvictingCacheManager((CacheManager) bean) : bean;
+			}
+		};
+	}
+
+	/**
+	 * the caches of the target cache manager , each one wrapped once in an {@link AfterCommitEvictingCache}
+	 */
+	public static class AfterCommitEvictingCacheManager implements CacheManager {
+
+		private final CacheManager targetCacheManager;
+		private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+		public AfterCommitEvictingCacheManager(CacheManager targetCacheManager) {
+			this.targetCacheManager = targetCacheManager;
+		}
+
+		@Override
+		@Nullable
+		public Cache getCache(String name) {
+			Cache cache = caches.get(name);
+			if (cache != null) {
+				return cache;
+			}
+			Cache targetCache = targetCacheManager.getCache(name);
+			return targetCache != null ? caches.computeIfAbsent(name, key -> new AfterCommitEvictingCache(targetCache)) : null;
+		}
+
+		@Override
+		public Collection<String> getCacheNames() {
+			return targetCacheManager.getCacheNames();
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package io.romeh.daotesting.config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.romeh.daotesting.resilience.BulkheadMeters;
+import io.romeh.daotesting.resilience.CircuitBreakerMeters;
+
+/**
+ * @author romeh
+ * guard the customer repository calls with a circuit breaker and a semaphore bulkhead , so an unavailable or overloaded db
+ * fails the calls fast instead of holding the request threads on the connection pool ,
+ * the reads by id and by name rejected by either of them are served from a last known good cache when they were read before ,
+ * the circuit breaker and the bulkhead are metered under resilience4j.circuitbreaker.* and resilience4j.bulkhead.* with the customerDb name ,
+ * and the fallback cache under cache.* with the customersFallback name ,
+ * the advisors run inside the retry one , so a rejected call is not retried and each retry attempt is recorded by the circuit breaker ,
+ * the streaming export holds its call for the whole export , so it has its own small bulkhead , customerDbExport , and a few
+ * exports do not take the permits of the short calls
+ */
+@Configuration
+@ConditionalOnProperty(name = "customers.db.circuit-breaker.enabled", havingValue = "true", matchIfMissing = true)
+public class DbCircuitBreakerConfig {
+
+	public static final String DB_CIRCUIT_BREAKER_NAME = "customerDb";
+	public static final String DB_EXPORT_BULKHEAD_NAME = "customerDbExport";
+	public static final String FALLBACK_CACHE_NAME = "customersFallback";
+	public static final String FALLBACK_READ_METHODS = "execution(* io.romeh.daotesting.dao.CustomerRepository.findById(..))"
+			+ " || execution(* io.romeh.daotesting.dao.CustomerRepository.findCustomerByName*(..))";
+	public static final String EXPORT_METHODS = "execution(* io.romeh.daotesting.dao.CustomerJdbcRepository.streamAllCustomers(..))";
+	public static final String SHORT_CALL_METHODS = "(" + MethodTimingConfig.REPOSITORY_METHODS + ") && !(" + EXPORT_METHODS + ")";
+
+	@Bean
+	public CircuitBreaker customerDbCircuitBreaker(@Value("${customers.db.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+	                                               @Value("${customers.db.circuit-breaker.ring-buffer-size-in-closed-state:100}") int closedRingBufferSize,
+	                                               @Value("${customers.db.circuit-breaker.ring-buffer-size-in-half-open-state:10}") int halfOpenRingBufferSize,
+	                                               @Value("${customers.db.circuit-breaker.wait-duration-in-open-state:10}") long waitSecondsInOpenState) {
+		return CircuitBreaker.of(DB_CIRCUIT_BREAKER_NAME, dbCircuitBreakerConfig(failureRateThreshold, closedRingBufferSize,
+				halfOpenRingBufferSize, Duration.ofSeconds(waitSecondsInOpenState)));
+	}
+
+	@Bean
+	public Bulkhead customerDbBulkhead(@Value("${customers.db.bulkhead.max-concurrent-calls:20}") int maxConcurrentCalls,
+	                                   @Value("${customers.db.bulkhead.max-wait-time:50}") long maxWaitMillis) {
+		return Bulkhead.of(DB_CIRCUIT_BREAKER_NAME, BulkheadConfig.custom()
+				.maxConcurrentCalls(maxConcurrentCalls)
+				.maxWaitTime(maxWaitMillis)
+				.build());
+	}
+
+	/**
+	 * the exports waiting for a permit would hold their request , they are rejected at once
+	 */
+	@Bean
+	public Bulkhead customerDbExportBulkhead(@Value("${customers.db.export-bulkhead.max-concurrent-calls:2}") int maxConcurrentCalls) {
+		return Bulkhead.of(DB_EXPORT_BULKHEAD_NAME, BulkheadConfig.custom()
+				.maxConcurrentCalls(maxConcurrentCalls)
+				.maxWaitTime(0)
+				.build());
+	}
+
+	@Bean
+	public Cache<List<Object>, Object> customerDbFallbackCache(
+			@Value("${customers.db.circuit-breaker.fallback-cache-spec:maximumSize=10000,recordStats}") String spec,
+			@Value("${customers.db.circuit-breaker.fallback-ttl:60}") long ttlSeconds) {
+		return Caffeine.from(spec).expireAfterWrite(Duration.ofSeconds(ttlSeconds)).build();
+	}
+
+	@Bean
+	public CircuitBreakerMeters customerDbCircuitBreakerMeters(CircuitBreaker customerDbCircuitBreaker) {
+		return new CircuitBreakerMeters(customerDbCircuitBreaker);
+	}
+
+	@Bean
+	public BulkheadMeters customerDbBulkheadMeters(@Qualifier("customerDbBulkhead") Bulkhead customerDbBulkhead) {
+		return new BulkheadMeters(customerDbBulkhead);
+	}
+
+	@Bean
+	public BulkheadMeters customerDbExportBulkheadMeters(@Qualifier("customerDbExportBulkhead") Bulkhead customerDbExportBulkhead) {
+		return new BulkheadMeters(customerDbExportBulkhead);
+	}
+
+	@Bean
+	public CaffeineCacheMetrics customerDbFallbackCacheMeters(Cache<List<Object>, Object> customerDbFallbackCache) {
+		// the same tag keys as the cache manager caches , prometheus does not take meters of one name with different tag keys
+		return new CaffeineCacheMetrics(customerDbFallbackCache, FALLBACK_CACHE_NAME,
+				Tags.of("cacheManager", "customerDbFallbackCache", "name", FALLBACK_CACHE_NAME));
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public static Advisor repositoryFallbackAdvisor(ObjectProvider<Cache<List<Object>, Object>> customerDbFallbackCache) {
+		return fallbackAdvisor(FALLBACK_READ_METHODS, customerDbFallbackCache);
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public static Advisor repositoryCircuitBreakerAdvisor(ObjectProvider<CircuitBreaker> customerDbCircuitBreaker,
+	                                                      @Qualifier("customerDbBulkhead") ObjectProvider<Bulkhead> customerDbBulkhead) {
+		return circuitBreakerAdvisor(SHORT_CALL_METHODS, customerDbCircuitBreaker, customerDbBulkhead);
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public static Advisor exportCircuitBreakerAdvisor(ObjectProvider<CircuitBreaker> customerDbCircuitBreaker,
+	                                                  @Qualifier("customerDbExportBulkhead") ObjectProvider<Bulkhead> customerDbExportBulkhead) {
+		return circuitBreakerAdvisor(EXPORT_METHODS, customerDbCircuitBreaker, customerDbExportBulkhead);
+	}
+
+	/**
+	 * @return the circuit breaker config of the db calls , only the errors telling the db is unavailable or overloaded are recorded
+	 * as failures , a constraint violation or a bad query says nothing about the db health
+	 */
+	public static CircuitBreakerConfig dbCircuitBreakerConfig(float failureRateThreshold, int closedRingBufferSize,
+	                                                          int halfOpenRingBufferSize, Duration waitDurationInOpenState) {
+		Predicate<Throwable> dbUnavailable = e -> e instanceof TransientDataAccessException
+				|| e instanceof RecoverableDataAccessException
+				|| e instanceof DataAccessResourceFailureException
+				|| e instanceof CannotCreateTransactionException;
+		return CircuitBreakerConfig.custom()
+				.failureRateThreshold(failureRateThreshold)
+				.ringBufferSizeInClosedState(closedRingBufferSize)
+				.ringBufferSizeInHalfOpenState(halfOpenRingBufferSize)
+				.waitDurationInOpenState(waitDurationInOpenState)
+				.recordFailure(dbUnavailable)
+				.build();
+	}
+
+	/**
+	 * @param expression the aspectj expression of the guarded methods
+	 * @return the advisor running the matching methods through the circuit breaker and the bulkhead
+	 */
+	public static Advisor circuitBreakerAdvisor(String expression, ObjectFactory<CircuitBreaker> circuitBreaker, ObjectFactory<Bulkhead> bulkhead) {
+		AspectJExpressionPointcut pointcut = new AspectJExpressionPointcut();
+		pointcut.setExpression(expression);
+		DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(pointcut, new DbCircuitBreakerInterceptor(circuitBreaker, bulkhead));
+		advisor.setOrder(Ordered.HIGHEST_PRECEDENCE + 4);
+		return advisor;
+	}
+
+	/**
+	 * @param expression the aspectj expression of the methods with a fallback , they must be reads
+	 * @return the advisor serving the last known good result of the matching methods when the circuit breaker or the bulkhead rejects them
+	 */
+	public static Advisor fallbackAdvisor(String expression, ObjectFactory<Cache<List<Object>, Object>> fallbackCache) {
+		AspectJExpressionPointcut pointcut = new AspectJExpressionPointcut();
+		pointcut.setExpression(expression);
+		DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(pointcut, new DbFallbackInterceptor(fallbackCache));
+		advisor.setOrder(Ordered.HIGHEST_PRECEDENCE + 3);
+		return advisor;
+	}
+}
@@ -0,0 +1,58 @@
+package io.romeh.daotesting.config;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.util.function.SingletonSupplier;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.utils.BulkheadUtils;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.utils.CircuitBreakerUtils;
+
+/**
+ * @author romeh
+ * run the db calls through the bulkhead and then the circuit breaker ,
+ * a full bulkhead fails the call after the bulkhead max wait time with a BulkheadFullException and an open circuit breaker
+ * fails it at once with a CircuitBreakerOpenException , in both cases without touching the db ,
+ * the bulkhead goes first so a rejected call never holds one of the half open calls of the circuit breaker
+ */
+public class DbCircuitBreakerInterceptor implements MethodInterceptor {
+
+	private final SingletonSupplier<CircuitBreaker> circuitBreaker;
+	private final SingletonSupplier<Bulkhead> bulkhead;
+
+	/**
+	 * @param circuitBreaker the db circuit breaker , only looked up on the first call like the other db advisors
+	 * @param bulkhead       the db bulkhead , only looked up on the first call as well
+	 */
+	public DbCircuitBreakerInterceptor(ObjectFactory<CircuitBreaker> circuitBreaker, ObjectFactory<Bulkhead> bulkhead) {
+		this.circuitBreaker = SingletonSupplier.of(circuitBreaker::getObject);
+		this.bulkhead = SingletonSupplier.of(bulkhead::getObject);
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Bulkhead callBulkhead = bulkhead.obtain();
+		BulkheadUtils.isCallPermitted(callBulkhead);
+		CircuitBreaker callCircuitBreaker = circuitBreaker.obtain();
+		try {
+			CircuitBreakerUtils.isCallPermitted(callCircuitBreaker);
+		} catch (RuntimeException e) {
+			callBulkhead.onComplete();
+			throw e;
+		}
+		long start = System.nanoTime();
+		try {
+			Object result = invocation.proceed();
+			callCircuitBreaker.onSuccess(System.nanoTime() - start);
+			return result;
+		} catch (Throwable e) {
+			// the circuit breaker config decides whether the failure counts
+			callCircuitBreaker.onError(System.nanoTime() - start, e);
+			throw e;
+		} finally {
+			callBulkhead.onComplete();
+		}
+	}
+}
@@ -3,21 +3,31 @@ package io.romeh.daotesting.config;
 import static java.lang.String.format;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 
 import javax.sql.DataSource;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
 import de.flapdoodle.embed.process.runtime.Network;
-import ru.yandex.qatools.embed.postgresql.PostgresExecutable;
+import io.micrometer.core.instrument.MeterRegistry;
 import ru.yandex.qatools.embed.postgresql.PostgresProcess;
-import ru.yandex.qatools.embed.postgresql.PostgresStarter;
 import ru.yandex.qatools.embed.postgresql.config.AbstractPostgresConfig;
 import ru.yandex.qatools.embed.postgresql.config.PostgresConfig;
 import ru.yandex.qatools.embed.postgresql.distribution.Version;
@@ -33,16 +43,53 @@ public class DbConfig {
 			.asList("--nosync", "--locale=en_US.UTF-8");
 
 	/**
+	 * the settings of the pools , size , idle timeout , leak detection , statement cache ... are bound from the spring.datasource.hikari.*
+	 * properties and the pool metrics are published to the micrometer registry
+	 *
+	 * @param meterRegistry the metrics registry to publish the pool metrics to if any
+	 * @return the settings of the customer pools
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "db.pool.enabled", havingValue = "true", matchIfMissing = true)
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariConfig customerPoolConfig(ObjectProvider<MeterRegistry> meterRegistry) {
+
+		HikariConfig poolConfig = new HikariConfig();
+		poolConfig.setDriverClassName("org.postgresql.Driver");
+		// the tracker factory has to be there before the pool is started by the first getConnection call
+		meterRegistry.ifAvailable(registry -> poolConfig.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+		return poolConfig;
+	}
+
+	/**
+	 * the default pooled datasource , replaced by the one routing the reads to the replica when the read replica is enabled (see ReadReplicaConfig)
+	 *
+	 * @param config             the PostgresConfig configuration which will be used to get the needed host, port..
+	 * @param customerPoolConfig the pool settings
+	 * @return the created pooled DB datasource
+	 */
+	@Bean
+	@DependsOn("postgresProcess")
+	@ConditionalOnExpression("${db.pool.enabled:true} and !${customers.db.replicas.enabled:false}")
+	public HikariDataSource dataSource(PostgresConfig config, HikariConfig customerPoolConfig) {
+
+		return pool(customerPoolConfig, customerPoolConfig.getPoolName(), config);
+	}
+
+	/**
+	 * the old non pooled datasource , every transaction opens a new physical connection , kept for comparison with the pooled one
+	 *
 	 * @param config the PostgresConfig configuration which will be used to get the needed host, port..
 	 * @return the created DB datasource
 	 */
 	@Bean
 	@DependsOn("postgresProcess")
-	public DataSource dataSource(PostgresConfig config) {
+	@ConditionalOnProperty(name = "db.pool.enabled", havingValue = "false")
+	public DataSource simpleDataSource(PostgresConfig config) {
 
 		DriverManagerDataSource ds = new DriverManagerDataSource();
 		ds.setDriverClassName("org.postgresql.Driver");
-		ds.setUrl(format("jdbc:postgresql://%s:%s/%s", config.net().host(), config.net().port(), config.storage().dbName()));
+		ds.setUrl(jdbcUrl(config));
 		ds.setUsername(config.credentials().username());
 		ds.setPassword(config.credentials().password());
 		return ds;
@@ -68,17 +115,51 @@ public class DbConfig {
 	}
 
 	/**
-	 * @param config the PostgresConfig configuration to use to start Postgres db process
+	 * the starter of the embedded postgres , it keeps the extracted binaries and the migrated data directory snapshots in the cache directory
+	 *
+	 * @param snapshots      start from a copy of the data directory migrated with the changelog instead of an initdb and the whole changelog
+	 * @param cacheDir       the directory of the extracted binaries and of the snapshots
+	 * @param resourceLoader the loader of the changelog
+	 * @param changeLog      the changelog migrating the snapshots , the same as the liquibase run of the application
+	 * @param contexts       the liquibase contexts of the application
+	 * @return the embedded postgres starter , its startup phases are published under db.embedded.startup
+	 * @throws IOException
+	 */
+	@Bean
+	public EmbeddedPostgresStarter embeddedPostgresStarter(@Value("${db.embedded.snapshot.enabled:true}") boolean snapshots,
+	                                                       @Value("${db.embedded.cache-dir:${user.home}/.embedpostgresql/customer-service}") String cacheDir,
+	                                                       ResourceLoader resourceLoader,
+	                                                       @Value("${spring.liquibase.change-log}") String changeLog,
+	                                                       @Value("${spring.liquibase.contexts:}") String contexts) throws IOException {
+		return new EmbeddedPostgresStarter(Paths.get(cacheDir), snapshots, resourceLoader, changeLog, contexts);
+	}
+
+	/**
+	 * @param config  the PostgresConfig configuration to use to start Postgres db process
+	 * @param starter the starter reusing the cached binaries and data directory snapshot
 	 * @return PostgresProcess , the started db process
 	 * @throws IOException
 	 */
 	@Bean(destroyMethod = "stop")
-	public PostgresProcess postgresProcess(PostgresConfig config) throws IOException {
-		PostgresStarter<PostgresExecutable, PostgresProcess> runtime = PostgresStarter.getDefaultInstance();
-		PostgresExecutable exec = runtime.prepare(config);
-		PostgresProcess process = exec.start();
-		return process;
+	public PostgresProcess postgresProcess(PostgresConfig config, EmbeddedPostgresStarter starter) throws IOException {
+		return starter.start(config);
+	}
+
+	/**
+	 * @return a new pool with the settings of the pool config , connected to the postgres of the config
+	 */
+	static HikariDataSource pool(HikariConfig poolConfig, String poolName, PostgresConfig config) {
+		HikariDataSource ds = new HikariDataSource();
+		poolConfig.copyStateTo(ds);
+		ds.setPoolName(poolName);
+		ds.setJdbcUrl(jdbcUrl(config));
+		ds.setUsername(config.credentials().username());
+		ds.setPassword(config.credentials().password());
+		return ds;
 	}
 
+	private static String jdbcUrl(PostgresConfig config) {
+		return format("jdbc:postgresql://%s:%s/%s", config.net().host(), config.net().port(), config.storage().dbName());
+	}
 
 }
@@ -0,0 +1,59 @@
+package io.romeh.daotesting.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.util.function.SingletonSupplier;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerOpenException;
+
+/**
+ * @author romeh
+ * keep the last result of each successful db read and serve it when the circuit breaker or the bulkhead rejects the same read ,
+ * the reads failing on the db itself are not served from the fallback cache , they are failing fast only once the circuit breaker opened ,
+ * the writes do not update the fallback cache so a served result can be as old as the fallback ttl
+ */
+public class DbFallbackInterceptor implements MethodInterceptor {
+
+	private final SingletonSupplier<Cache<List<Object>, Object>> fallbackCache;
+
+	/**
+	 * @param fallbackCache the last known good results by method name and arguments , only looked up on the first call
+	 */
+	public DbFallbackInterceptor(ObjectFactory<Cache<List<Object>, Object>> fallbackCache) {
+		this.fallbackCache = SingletonSupplier.of(fallbackCache::getObject);
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		List<Object> key = key(invocation);
+		try {
+			Object result = invocation.proceed();
+			if (result != null) {
+				fallbackCache.obtain().put(key, result);
+			}
+			return result;
+		} catch (CircuitBreakerOpenException | BulkheadFullException e) {
+			Object lastResult = fallbackCache.obtain().getIfPresent(key);
+			if (lastResult == null) {
+				throw e;
+			}
+			return lastResult;
+		}
+	}
+
+	private static List<Object> key(MethodInvocation invocation) {
+		Object[] arguments = invocation.getArguments();
+		List<Object> key = new ArrayList<>(arguments.length + 1);
+		key.add(invocation.getMethod().getName());
+		Collections.addAll(key, arguments);
+		return key;
+	}
+}
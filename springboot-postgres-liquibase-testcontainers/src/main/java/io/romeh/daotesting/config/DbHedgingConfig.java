@@ -0,0 +1,92 @@
+package io.romeh.daotesting.config;
+
+import java.time.Duration;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.romeh.daotesting.resilience.HedgeConfig;
+import io.romeh.daotesting.resilience.HedgedExecutor;
+import io.romeh.daotesting.resilience.ShardedScheduledExecutorService;
+
+/**
+ * @author romeh
+ * hedge the idempotent customer reads , the lookups by id and by name , a second attempt is fired when the first one is slower
+ * than the configured percentile of the recent reads , at most max-hedge-ratio second attempts per read ,
+ * the hedged reads are metered under resilience4j.hedge.* with the customerDbReads name ,
+ * the hedging advisor runs between the timing and the retry ones , so each attempt is retried on its own
+ */
+@Configuration
+@ConditionalOnProperty(name = "customers.db.hedging.enabled", havingValue = "true")
+public class DbHedgingConfig {
+
+	public static final String DB_HEDGING_NAME = "customerDbReads";
+	public static final String HEDGED_READ_METHODS = "execution(* io.romeh.daotesting.dao.CustomerRepository.findById(..))"
+			+ " || execution(* io.romeh.daotesting.dao.CustomerRepository.findCustomerByName*(..))";
+	private static final String HEDGING_EXECUTOR = "customerDbHedgingExecutor";
+
+	/**
+	 * it does not queue , when all its threads are busy the reads run on the caller thread and are not hedged
+	 */
+	@Bean(name = HEDGING_EXECUTOR)
+	public ThreadPoolTaskExecutor customerDbHedgingExecutor(@Value("${customers.db.hedging.pool-size:32}") int poolSize) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.setQueueCapacity(0);
+		executor.setThreadNamePrefix("customer-hedge-");
+		return executor;
+	}
+
+	@Bean(destroyMethod = "shutdownNow")
+	public ShardedScheduledExecutorService customerDbHedgingScheduler() {
+		return new ShardedScheduledExecutorService("customer-hedge-timer-");
+	}
+
+	@Bean
+	public HedgedExecutor customerDbHedgedExecutor(MeterRegistry meterRegistry,
+	                                               @Qualifier(HEDGING_EXECUTOR) ThreadPoolTaskExecutor customerDbHedgingExecutor,
+	                                               ShardedScheduledExecutorService customerDbHedgingScheduler,
+	                                               @Value("${customers.db.hedging.delay-percentile:0.95}") double delayPercentile,
+	                                               @Value("${customers.db.hedging.min-delay:2}") long minDelayMillis,
+	                                               @Value("${customers.db.hedging.max-delay:1000}") long maxDelayMillis,
+	                                               @Value("${customers.db.hedging.max-hedge-ratio:0.1}") double maxHedgeRatio) {
+		HedgeConfig hedgeConfig = HedgeConfig.custom()
+				.delayPercentile(delayPercentile)
+				.delayBounds(Duration.ofMillis(minDelayMillis), Duration.ofMillis(maxDelayMillis))
+				.maxHedgeRatio(maxHedgeRatio, Duration.ofSeconds(10))
+				.build();
+		return HedgedExecutor.of(DB_HEDGING_NAME, hedgeConfig, customerDbHedgingExecutor, customerDbHedgingScheduler, meterRegistry);
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public static Advisor repositoryHedgingAdvisor(ObjectProvider<HedgedExecutor> customerDbHedgedExecutor) {
+		return hedgingAdvisor(HEDGED_READ_METHODS, customerDbHedgedExecutor);
+	}
+
+	/**
+	 * @param expression the aspectj expression of the hedged methods , they must be idempotent reads
+	 * @return the advisor hedging the matching methods
+	 */
+	public static Advisor hedgingAdvisor(String expression, ObjectFactory<HedgedExecutor> hedgedExecutor) {
+		AspectJExpressionPointcut pointcut = new AspectJExpressionPointcut();
+		pointcut.setExpression(expression);
+		DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(pointcut, new DbHedgingInterceptor(hedgedExecutor));
+		advisor.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+		return advisor;
+	}
+}
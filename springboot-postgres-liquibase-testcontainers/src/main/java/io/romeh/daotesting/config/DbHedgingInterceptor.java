@@ -0,0 +1,58 @@
+package io.romeh.daotesting.config;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.function.SingletonSupplier;
+
+import io.romeh.daotesting.resilience.HedgedExecutor;
+
+/**
+ * @author romeh
+ * run the idempotent db reads through the hedged executor , each attempt being a fresh invocation of the rest of the advice chain
+ * on a hedging thread , so with its own repository transaction and its own retries ,
+ * a read joining a running transaction is not hedged as the other thread would not see the transaction ,
+ * a read run from the primary by {@link ReplicaRoutingDataSource#readFromPrimary} is from the primary on the hedging thread too
+ */
+public class DbHedgingInterceptor implements MethodInterceptor {
+
+	private final SingletonSupplier<HedgedExecutor> hedgedExecutor;
+
+	/**
+	 * @param hedgedExecutor the hedged executor , only looked up on the first call as the advisors are created before the meter registry
+	 */
+	public DbHedgingInterceptor(ObjectFactory<HedgedExecutor> hedgedExecutor) {
+		this.hedgedExecutor = SingletonSupplier.of(hedgedExecutor::getObject);
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		if (TransactionSynchronizationManager.isActualTransactionActive() || !(invocation instanceof ProxyMethodInvocation)) {
+			return invocation.proceed();
+		}
+		ProxyMethodInvocation proxyInvocation = (ProxyMethodInvocation) invocation;
+		boolean readFromPrimary = ReplicaRoutingDataSource.isReadingFromPrimary();
+		Supplier<Object> attempt = () -> {
+			try {
+				return proxyInvocation.invocableClone().proceed();
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new UndeclaredThrowableException(e);
+			}
+		};
+		try {
+			return hedgedExecutor.obtain().executeSupplier(readFromPrimary ? () -> ReplicaRoutingDataSource.readFromPrimary(attempt) : attempt)
+					.join();
+		} catch (CompletionException e) {
+			// rethrow the db exception itself so it is handled like a non hedged read failure
+			throw e.getCause() != null ? e.getCause() : e;
+		}
+	}
+}
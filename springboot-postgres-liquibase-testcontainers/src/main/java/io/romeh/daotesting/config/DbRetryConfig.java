@@ -0,0 +1,94 @@
+package io.romeh.daotesting.config;
+
+import java.time.Duration;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+
+import io.github.resilience4j.retry.IntervalFunction;
+import io.github.resilience4j.retry.RetryConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.romeh.daotesting.resilience.MeteredRetry;
+import io.romeh.daotesting.resilience.RetryBudget;
+
+/**
+ * @author romeh
+ * retry the idempotent customer repository reads failing with a transient ( query timeout , lock or deadlock , ... ) or a recoverable
+ * db error , the writes are not retried as a save failing with an unknown outcome would be inserted again with a new id , nor the
+ * streaming export as its rows already sent would be sent again ,
+ * the retry is metered under resilience4j.retry.* with the customerDb name to tune the max attempts and the backoff from the numbers ,
+ * the retry advisor runs inside the timing and the hedging ones so the repository timers include the retries ,
+ * the backoff is jittered so the calls failing together do not retry together , and a retry budget caps the retries to a ratio
+ * of the db calls so a slow db does not get max attempts times its load
+ */
+@Configuration
+@ConditionalOnProperty(name = "customers.db.retry.enabled", havingValue = "true", matchIfMissing = true)
+public class DbRetryConfig {
+
+	public static final String DB_RETRY_NAME = "customerDb";
+	public static final String RETRIED_READ_METHODS = "execution(* io.romeh.daotesting.dao.CustomerRepository.findById(..))"
+			+ " || execution(* io.romeh.daotesting.dao.CustomerRepository.findCustomerByName*(..))"
+			+ " || execution(* io.romeh.daotesting.dao.CustomerRepository.findVersionById(..))"
+			+ " || execution(* io.romeh.daotesting.dao.CustomerRepository.findAllByIdAny(..))"
+			+ " || execution(* io.romeh.daotesting.dao.CustomerRepository.findDtosAfter(..))"
+			+ " || execution(* io.romeh.daotesting.dao.CustomerRepository.findByIdGreaterThan*(..))";
+
+	@Bean
+	public RetryBudget customerDbRetryBudget(@Value("${customers.db.retry.budget.ratio:0.1}") double retryRatio,
+	                                         @Value("${customers.db.retry.budget.min-retries-per-second:10}") int minRetriesPerSecond,
+	                                         @Value("${customers.db.retry.budget.window:10}") long windowSeconds) {
+		return RetryBudget.of(retryRatio, minRetriesPerSecond, Duration.ofSeconds(windowSeconds));
+	}
+
+	@Bean
+	public MeteredRetry customerDbRetry(MeterRegistry meterRegistry, RetryBudget customerDbRetryBudget,
+	                                    @Value("${customers.db.retry.max-attempts:3}") int maxAttempts,
+	                                    @Value("${customers.db.retry.initial-interval:50}") long initialIntervalMillis,
+	                                    @Value("${customers.db.retry.multiplier:2}") double multiplier,
+	                                    @Value("${customers.db.retry.randomization-factor:0.5}") double randomizationFactor) {
+		RetryConfig retryConfig = dbRetryConfig(maxAttempts, Duration.ofMillis(initialIntervalMillis), multiplier, randomizationFactor);
+		return MeteredRetry.of(DB_RETRY_NAME, retryConfig, customerDbRetryBudget, meterRegistry);
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public static Advisor repositoryRetryAdvisor(ObjectProvider<MeteredRetry> customerDbRetry) {
+		return retryAdvisor(RETRIED_READ_METHODS, customerDbRetry);
+	}
+
+	/**
+	 * @param randomizationFactor how far the wait goes around the exponential backoff , 0.5 for +/- 50%
+	 * @return the retry config of the db calls , only the transient and recoverable db errors are retried
+	 */
+	public static RetryConfig dbRetryConfig(int maxAttempts, Duration initialInterval, double multiplier, double randomizationFactor) {
+		return RetryConfig.custom()
+				.maxAttempts(maxAttempts)
+				.intervalFunction(IntervalFunction.ofExponentialRandomBackoff(initialInterval, multiplier, randomizationFactor))
+				.retryExceptions(TransientDataAccessException.class, RecoverableDataAccessException.class)
+				.build();
+	}
+
+	/**
+	 * @param expression the aspectj expression of the retried methods
+	 * @return the advisor retrying the matching methods
+	 */
+	public static Advisor retryAdvisor(String expression, ObjectFactory<MeteredRetry> retry) {
+		AspectJExpressionPointcut pointcut = new AspectJExpressionPointcut();
+		pointcut.setExpression(expression);
+		DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(pointcut, new DbRetryInterceptor(retry));
+		advisor.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+		return advisor;
+	}
+}
@@ -0,0 +1,48 @@
+package io.romeh.daotesting.config;
+
+import java.lang.reflect.UndeclaredThrowableException;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.function.SingletonSupplier;
+
+import io.romeh.daotesting.resilience.MeteredRetry;
+
+/**
+ * @author romeh
+ * run the db calls through the metered db retry , each attempt being a fresh invocation of the rest of the advice chain ,
+ * so with its own repository transaction ,
+ * a call joining a running transaction is not retried as the failed statement marked the whole transaction rollback only ,
+ * it is up to the transaction owner to retry it
+ */
+public class DbRetryInterceptor implements MethodInterceptor {
+
+	private final SingletonSupplier<MeteredRetry> retry;
+
+	/**
+	 * @param retry the db retry , only looked up on the first call as the advisors are created before the meter registry
+	 */
+	public DbRetryInterceptor(ObjectFactory<MeteredRetry> retry) {
+		this.retry = SingletonSupplier.of(retry::getObject);
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		if (TransactionSynchronizationManager.isActualTransactionActive() || !(invocation instanceof ProxyMethodInvocation)) {
+			return invocation.proceed();
+		}
+		ProxyMethodInvocation proxyInvocation = (ProxyMethodInvocation) invocation;
+		return retry.obtain().executeCallable(() -> {
+			try {
+				return proxyInvocation.invocableClone().proceed();
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new UndeclaredThrowableException(e);
+			}
+		});
+	}
+}
@@ -0,0 +1,195 @@
+package io.romeh.daotesting.config;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StopWatch;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import liquibase.exception.LiquibaseException;
+import liquibase.integration.spring.SpringLiquibase;
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.qatools.embed.postgresql.EmbeddedPostgres;
+import ru.yandex.qatools.embed.postgresql.PostgresExecutable;
+import ru.yandex.qatools.embed.postgresql.PostgresProcess;
+import ru.yandex.qatools.embed.postgresql.PostgresStarter;
+import ru.yandex.qatools.embed.postgresql.config.AbstractPostgresConfig;
+import ru.yandex.qatools.embed.postgresql.config.PostgresConfig;
+
+/**
+ * @author romeh
+ * start the embedded postgres from binaries extracted once in the cache directory and , when the snapshots are enabled ,
+ * from a copy of a data directory already migrated with the liquibase changelog , instead of an initdb followed by the whole changelog ,
+ * the snapshot of a changelog is built by the first start , the later ones only copy it , so the liquibase run of the application
+ * finds every change set applied ,
+ * the startup phases are logged and published under db.embedded.startup with the phase tag , every phase has its gauge
+ * from the binding on , at zero until a start goes through it , as the registry may bind before the first start
+ */
+@Slf4j
+public class EmbeddedPostgresStarter implements MeterBinder, DisposableBean {
+
+	static final String STARTUP = "db.embedded.startup";
+	static final String INITDB_PHASE = "initdb for the snapshot";
+	static final String MIGRATE_PHASE = "migrate the snapshot";
+	static final String SAVE_PHASE = "save the snapshot";
+	static final String RESTORE_PHASE = "restore snapshot";
+	static final String PREPARE_PHASE = "prepare binaries";
+	static final String START_PHASE = "start postgres";
+	static final List<String> PHASES = Arrays.asList(INITDB_PHASE, MIGRATE_PHASE, SAVE_PHASE, RESTORE_PHASE, PREPARE_PHASE, START_PHASE);
+
+	private final Path binariesDir;
+	private final PostgresSnapshotStore snapshotStore;
+	private final ResourceLoader resourceLoader;
+	private final String changeLog;
+	private final String contexts;
+	private final Map<String, Long> phaseNanos = new ConcurrentHashMap<>();
+	private final List<Path> instanceDirs = new ArrayList<>();
+
+	/**
+	 * @param cacheDir  the directory of the extracted binaries and of the snapshots
+	 * @param snapshots if false the postgres data directory is created by initdb and migrated by the application on every start
+	 * @param changeLog the liquibase changelog location of the application , exactly as the application gives it to liquibase
+	 *                  as liquibase records the change sets with it , its content checksum keys the snapshots
+	 * @param contexts  the liquibase contexts of the application , the snapshots only have the change sets of these contexts
+	 */
+	public EmbeddedPostgresStarter(Path cacheDir, boolean snapshots, ResourceLoader resourceLoader, String changeLog, String contexts)
+			throws IOException {
+		this.binariesDir = Files.createDirectories(cacheDir.resolve("binaries"));
+		this.snapshotStore = snapshots ? new PostgresSnapshotStore(cacheDir.resolve("snapshots")) : null;
+		this.resourceLoader = resourceLoader;
+		this.changeLog = changeLog;
+		this.contexts = contexts;
+	}
+
+	/**
+	 * @param config the postgres config , its storage is replaced by a copy of the snapshot when the snapshots are enabled
+	 * @return the started postgres process
+	 */
+	public synchronized PostgresProcess start(PostgresConfig config) throws IOException {
+		StopWatch stopWatch = new StopWatch("embedded postgres startup");
+		PostgresStarter<PostgresExecutable, PostgresProcess> runtime = PostgresStarter.getInstance(EmbeddedPostgres.cachedRuntimeConfig(binariesDir));
+		PostgresConfig instanceConfig = config;
+		if (snapshotStore != null) {
+			String snapshotKey = PostgresSnapshotStore.snapshotKey(config.version().asInDownloadPath(),
+					config.getAdditionalInitDbParams(), resourceLoader.getResource(changeLog), contexts);
+			if (!snapshotStore.contains(snapshotKey)) {
+				buildSnapshot(runtime, config, snapshotKey, stopWatch);
+			}
+			stopWatch.start(RESTORE_PHASE);
+			Path instanceDir = Files.createTempDirectory("customer-postgres-");
+			instanceDirs.add(instanceDir);
+			Path dataDir = instanceDir.resolve("data");
+			snapshotStore.restore(snapshotKey, dataDir);
+			instanceConfig = withDataDir(config, dataDir);
+			stopWatch.stop();
+		}
+		stopWatch.start(PREPARE_PHASE);
+		PostgresExecutable executable = runtime.prepare(instanceConfig);
+		stopWatch.stop();
+		stopWatch.start(START_PHASE);
+		PostgresProcess process = executable.start();
+		stopWatch.stop();
+
+		for (StopWatch.TaskInfo phase : stopWatch.getTaskInfo()) {
+			phaseNanos.merge(phase.getTaskName(), TimeUnit.MILLISECONDS.toNanos(phase.getTimeMillis()), Long::sum);
+		}
+		log.info("embedded postgres started on port {} in {} ms\n{}", instanceConfig.net().port(), stopWatch.getTotalTimeMillis(),
+				stopWatch.prettyPrint());
+		return process;
+	}
+
+	/**
+	 * @param config the postgres config of the replica , on another port than the primary one
+	 * @return a second postgres started from the same snapshot as the primary one , or migrated on its own when the snapshots are disabled ,
+	 * it does not replicate the primary , it only stands for a replica in the local runs
+	 */
+	public PostgresProcess startReplica(PostgresConfig config) throws IOException {
+		PostgresProcess process = start(config);
+		if (snapshotStore == null) {
+			migrate(config);
+		}
+		return process;
+	}
+
+	/**
+	 * the snapshot is built by a first postgres on its own data directory , migrated and stopped before the copy
+	 */
+	private void buildSnapshot(PostgresStarter<PostgresExecutable, PostgresProcess> runtime, PostgresConfig config, String snapshotKey,
+	                           StopWatch stopWatch) throws IOException {
+		log.info("no embedded postgres snapshot {} yet , building it", snapshotKey);
+		Path buildDir = Files.createTempDirectory("customer-postgres-snapshot-");
+		try {
+			PostgresConfig buildConfig = withDataDir(config, buildDir.resolve("data"));
+			stopWatch.start(INITDB_PHASE);
+			PostgresProcess buildProcess = runtime.prepare(buildConfig).start();
+			stopWatch.stop();
+			try {
+				stopWatch.start(MIGRATE_PHASE);
+				migrate(buildConfig);
+				stopWatch.stop();
+			} finally {
+				buildProcess.stop();
+			}
+			stopWatch.start(SAVE_PHASE);
+			snapshotStore.save(snapshotKey, buildDir.resolve("data"));
+			stopWatch.stop();
+		} finally {
+			FileSystemUtils.deleteRecursively(buildDir);
+		}
+	}
+
+	private void migrate(PostgresConfig config) throws IOException {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				format("jdbc:postgresql://%s:%s/%s", config.net().host(), config.net().port(), config.storage().dbName()),
+				config.credentials().username(), config.credentials().password());
+		dataSource.setDriverClassName("org.postgresql.Driver");
+		SpringLiquibase liquibase = new SpringLiquibase();
+		liquibase.setDataSource(dataSource);
+		liquibase.setChangeLog(changeLog);
+		liquibase.setContexts(contexts);
+		liquibase.setResourceLoader(resourceLoader);
+		try {
+			liquibase.afterPropertiesSet();
+		} catch (LiquibaseException e) {
+			throw new IOException("the migration of the embedded postgres snapshot failed", e);
+		}
+	}
+
+	private static PostgresConfig withDataDir(PostgresConfig config, Path dataDir) throws IOException {
+		PostgresConfig dataDirConfig = new PostgresConfig(config.version(), config.net(),
+				new AbstractPostgresConfig.Storage(config.storage().dbName(), dataDir.toString()), config.timeout(), config.credentials());
+		dataDirConfig.getAdditionalInitDbParams().addAll(config.getAdditionalInitDbParams());
+		return dataDirConfig;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry meterRegistry) {
+		PHASES.forEach(phase -> TimeGauge.builder(STARTUP, phaseNanos, TimeUnit.NANOSECONDS, phases -> phases.getOrDefault(phase, 0L))
+				.description("the time of the embedded postgres startup phases")
+				.tag("phase", phase)
+				.register(meterRegistry));
+	}
+
+	/**
+	 * delete the copies of the snapshot , the postgres processes are stopped before as they depend on this starter
+	 */
+	@Override
+	public void destroy() {
+		instanceDirs.forEach(instanceDir -> FileSystemUtils.deleteRecursively(instanceDir.toFile()));
+	}
+}
@@ -0,0 +1,61 @@
+package io.romeh.daotesting.config;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * @author romeh
+ * the hot path timers of the customer mapper , service and repositories , see MethodTimingInterceptor ,
+ * the timing advisors are the outermost ones so the service timers include the cache hits
+ */
+@Configuration
+@ConditionalOnProperty(name = "customers.metrics.methods.enabled", havingValue = "true", matchIfMissing = true)
+public class MethodTimingConfig {
+
+	public static final String MAPPER_METHODS = "execution(* io.romeh.daotesting.rest.dto.CustomerMapper.*(..))";
+	public static final String SERVICE_METHODS = "execution(public * io.romeh.daotesting.service.CustomerService.*(..))";
+	public static final String REPOSITORY_METHODS = "execution(* io.romeh.daotesting.dao.CustomerRepository.*(..))"
+			+ " || execution(public * io.romeh.daotesting.dao.CustomerJdbcRepository.*(..))";
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public static Advisor mapperTimingAdvisor(ObjectProvider<MeterRegistry> meterRegistry) {
+		return timingAdvisor(MAPPER_METHODS, "mapper", meterRegistry);
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public static Advisor serviceTimingAdvisor(ObjectProvider<MeterRegistry> meterRegistry) {
+		return timingAdvisor(SERVICE_METHODS, "service", meterRegistry);
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public static Advisor repositoryTimingAdvisor(ObjectProvider<MeterRegistry> meterRegistry) {
+		return timingAdvisor(REPOSITORY_METHODS, "repository", meterRegistry);
+	}
+
+	/**
+	 * @param expression the aspectj expression of the timed methods
+	 * @param layer      the layer tag of the timers
+	 * @return the advisor timing the matching methods
+	 */
+	public static Advisor timingAdvisor(String expression, String layer, ObjectFactory<MeterRegistry> meterRegistry) {
+		AspectJExpressionPointcut pointcut = new AspectJExpressionPointcut();
+		pointcut.setExpression(expression);
+		DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(pointcut, new MethodTimingInterceptor(meterRegistry, layer));
+		advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+		return advisor;
+	}
+}
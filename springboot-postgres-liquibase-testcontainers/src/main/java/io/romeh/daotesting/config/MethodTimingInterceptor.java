@@ -0,0 +1,67 @@
+package io.romeh.daotesting.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * @author romeh
+ * time the calls of a customer hot path layer under the customers.method timer , tagged by layer , method and outcome ,
+ * the timers are looked up once per method so recording a call does not allocate
+ */
+public class MethodTimingInterceptor implements MethodInterceptor {
+
+	public static final String METRIC_NAME = "customers.method";
+
+	private final ObjectFactory<MeterRegistry> meterRegistry;
+	private final String layer;
+	private final ConcurrentMap<Method, Timer[]> timers = new ConcurrentHashMap<>();
+
+	/**
+	 * @param meterRegistry the registry , only looked up on the first call as the advisors are created before the registry
+	 * @param layer         the layer tag of the timers
+	 */
+	public MethodTimingInterceptor(ObjectFactory<MeterRegistry> meterRegistry, String layer) {
+		this.meterRegistry = meterRegistry;
+		this.layer = layer;
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Timer[] methodTimers = timers.get(invocation.getMethod());
+		if (methodTimers == null) {
+			methodTimers = timers.computeIfAbsent(invocation.getMethod(), method -> register(method.getName()));
+		}
+		long start = System.nanoTime();
+		try {
+			Object result = invocation.proceed();
+			methodTimers[0].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			return result;
+		} catch (Throwable e) {
+			methodTimers[1].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the success and the error timers of the method
+	 */
+	private Timer[] register(String methodName) {
+		return new Timer[]{timer(methodName, "success"), timer(methodName, "error")};
+	}
+
+	private Timer timer(String methodName, String outcome) {
+		return Timer.builder(METRIC_NAME)
+				.description("the time spent in the customer " + layer + " methods")
+				.tags("layer", layer, "method", methodName, "outcome", outcome)
+				.register(meterRegistry.getObject());
+	}
+}
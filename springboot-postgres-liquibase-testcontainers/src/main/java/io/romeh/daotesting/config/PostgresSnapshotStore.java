@@ -0,0 +1,117 @@
+package io.romeh.daotesting.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * @author romeh
+ * the snapshots of migrated postgres data directories , one per snapshot key ,
+ * the key is a checksum of the postgres version , the initdb parameters , the liquibase changelog and contexts , so a changelog change
+ * makes a new snapshot and the old ones are simply not used anymore ,
+ * a snapshot is written in a temporary directory and moved in place at once , so concurrent builds of the same snapshot
+ * (parallel test jvms) do not see a half written one
+ */
+public class PostgresSnapshotStore {
+
+	private final Path snapshotsDir;
+
+	/**
+	 * @param snapshotsDir the directory of the snapshots , created if missing
+	 */
+	public PostgresSnapshotStore(Path snapshotsDir) throws IOException {
+		this.snapshotsDir = Files.createDirectories(snapshotsDir);
+	}
+
+	/**
+	 * @return the key of the snapshots of a postgres version and initdb parameters migrated with the change sets of the contexts
+	 */
+	public static String snapshotKey(String postgresVersion, List<String> initDbParams, Resource changeLog, String contexts) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(postgresVersion.getBytes(StandardCharsets.UTF_8));
+			digest.update(String.join(" ", initDbParams).getBytes(StandardCharsets.UTF_8));
+			digest.update(contexts.getBytes(StandardCharsets.UTF_8));
+			try (InputStream changeLogContent = changeLog.getInputStream()) {
+				byte[] buffer = new byte[8192];
+				for (int read = changeLogContent.read(buffer); read != -1; read = changeLogContent.read(buffer)) {
+					digest.update(buffer, 0, read);
+				}
+			}
+			StringBuilder key = new StringBuilder();
+			byte[] hash = digest.digest();
+			for (int i = 0; i < 8; i++) {
+				key.append(String.format("%02x", hash[i]));
+			}
+			return postgresVersion + "-" + key;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("no SHA-256 in this jvm", e);
+		}
+	}
+
+	public boolean contains(String key) {
+		return Files.isDirectory(snapshotsDir.resolve(key));
+	}
+
+	/**
+	 * @param dataDir the stopped postgres data directory to keep as the snapshot of the key
+	 */
+	public void save(String key, Path dataDir) throws IOException {
+		Path snapshot = snapshotsDir.resolve(key);
+		Path partialSnapshot = Files.createTempDirectory(snapshotsDir, key + ".partial-").resolve("data");
+		try {
+			copyDirectory(dataDir, partialSnapshot);
+			Files.move(partialSnapshot, snapshot, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// another jvm saved the same snapshot first , it is as good as ours
+			if (!contains(key)) {
+				throw e;
+			}
+		} finally {
+			FileSystemUtils.deleteRecursively(partialSnapshot.getParent());
+		}
+	}
+
+	/**
+	 * @param dataDir the not yet existing postgres data directory to restore the snapshot of the key in
+	 * @return false when there is no snapshot for the key
+	 */
+	public boolean restore(String key, Path dataDir) throws IOException {
+		if (!contains(key)) {
+			return false;
+		}
+		copyDirectory(snapshotsDir.resolve(key), dataDir);
+		return true;
+	}
+
+	/**
+	 * copy a directory tree with the file attributes , postgres refuses to start on a data directory readable by others
+	 */
+	private static void copyDirectory(Path source, Path target) throws IOException {
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Files.copy(dir, target.resolve(source.relativize(dir).toString()), StandardCopyOption.COPY_ATTRIBUTES);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.copy(file, target.resolve(source.relativize(file).toString()), StandardCopyOption.COPY_ATTRIBUTES);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
@@ -0,0 +1,73 @@
+package io.romeh.daotesting.config;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import de.flapdoodle.embed.process.runtime.Network;
+import ru.yandex.qatools.embed.postgresql.PostgresProcess;
+import ru.yandex.qatools.embed.postgresql.config.AbstractPostgresConfig;
+import ru.yandex.qatools.embed.postgresql.config.PostgresConfig;
+
+/**
+ * @author romeh
+ * the read replica of the customer db , the read only transactions (the repository reads by id , by name and the listings) are routed
+ * to the replica pool and the other ones to the primary pool , see ReplicaRoutingDataSource ,
+ * for the local run the replica is a second embedded postgres started like the primary one , it does not replicate the primary writes ,
+ * to be replaced with the actual replicas in production , the routing needs the pooled data source (db.pool.enabled)
+ */
+@Configuration
+@ConditionalOnProperty(name = "customers.db.replicas.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+	public static final String REPLICA_NAME = "replica-1";
+
+	/**
+	 * @param config  the config of the primary postgres , the replica one only differs by its port
+	 * @param starter the starter of the primary postgres
+	 * @return the started replica postgres process
+	 * @throws IOException
+	 */
+	@Bean(destroyMethod = "stop")
+	public PostgresProcess replicaPostgresProcess(PostgresConfig config, EmbeddedPostgresStarter starter) throws IOException {
+		PostgresConfig replicaConfig = new PostgresConfig(config.version(),
+				new AbstractPostgresConfig.Net(config.net().host(), Network.getFreeServerPort()),
+				new AbstractPostgresConfig.Storage(config.storage().dbName()), config.timeout(), config.credentials());
+		replicaConfig.getAdditionalInitDbParams().addAll(config.getAdditionalInitDbParams());
+		return starter.startReplica(replicaConfig);
+	}
+
+	/**
+	 * the only datasource of the application , jpa , liquibase and the jdbc repository use it , it owns the primary and the replica pools
+	 * so spring boot does not see several datasources , the replica pool has the settings of the primary one , read only connections
+	 * and a short connection timeout so a replica down is left for the primary without holding the read for the whole primary timeout
+	 *
+	 * @param config                   the PostgresConfig of the primary
+	 * @param customerPoolConfig       the pool settings
+	 * @param replicaConnectionTimeout the ms to wait for a replica connection
+	 * @param maxLag                   the replay lag in ms above which the replica does not serve the reads anymore
+	 * @param healthCheckInterval      the ms between the replica health and lag checks
+	 * @return the datasource routing the read only transactions to the replica , the pool metrics are published under
+	 * hikaricp.connections.* with the pool name of the primary and the same name followed by -replica
+	 */
+	@Bean
+	@DependsOn("postgresProcess")
+	public ReplicaRoutingDataSource routingDataSource(PostgresConfig config, HikariConfig customerPoolConfig, PostgresProcess replicaPostgresProcess,
+	                                                  @Value("${customers.db.replicas.connection-timeout:1000}") long replicaConnectionTimeout,
+	                                                  @Value("${customers.db.replicas.max-lag:1000}") long maxLag,
+	                                                  @Value("${customers.db.replicas.health-check-interval:1000}") long healthCheckInterval) {
+		HikariDataSource replica = DbConfig.pool(customerPoolConfig, customerPoolConfig.getPoolName() + "-replica", replicaPostgresProcess.getConfig());
+		replica.setReadOnly(true);
+		replica.setConnectionTimeout(replicaConnectionTimeout);
+		return new ReplicaRoutingDataSource(DbConfig.pool(customerPoolConfig, customerPoolConfig.getPoolName(), config),
+				Collections.singletonMap(REPLICA_NAME, replica), maxLag, healthCheckInterval);
+	}
+}
@@ -0,0 +1,259 @@
+package io.romeh.daotesting.config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author romeh
+ * route the connections of the read only transactions to the read replica pools , round robin , and the other ones to the primary pool ,
+ * a replica is in the rotation while its health check passes and it replays the primary changes at most max-lag behind ,
+ * a replica failing to give a connection is out of the rotation until its next passing health check and the read goes to another one ,
+ * with no replica in the rotation the reads go to the primary ,
+ * the read only flag of a transaction is only known once the transaction is started , so the connections are lazy , the actual
+ * connection is taken and routed at the first statement ,
+ * a read served by a replica can miss the writes of the last max-lag ms , the reads which must see them , like the fills of the
+ * caches evicted by a write , run through {@link #readFromPrimary(Supplier)} ,
+ * the routed connections are metered under db.routing.connections and the replicas under db.replica.lag and db.replica.in-rotation
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements MeterBinder, DisposableBean {
+
+	static final String ROUTED_CONNECTIONS = "db.routing.connections";
+	static final String REPLICA_LAG = "db.replica.lag";
+	static final String REPLICA_IN_ROTATION = "db.replica.in-rotation";
+	static final String PRIMARY = "primary";
+
+	// the functions of the wal positions are named xlog/location before postgres 10 , a caught up replica has no lag even if the
+	// last replayed transaction is old , which is the case of every replica of a primary without writes
+	private static final String LAG_QUERY_9 = "SELECT CASE WHEN NOT pg_is_in_recovery()"
+			+ " OR pg_last_xlog_receive_location() = pg_last_xlog_replay_location() THEN 0"
+			+ " ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+	private static final ThreadLocal<Boolean> READING_FROM_PRIMARY = ThreadLocal.withInitial(() -> false);
+
+	private static final String LAG_QUERY = "SELECT CASE WHEN NOT pg_is_in_recovery()"
+			+ " OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+			+ " ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+	private final DataSource primary;
+	private final List<Replica> replicas = new ArrayList<>();
+	private final long maxLagMillis;
+	private final long checkIntervalMillis;
+	private final AtomicInteger nextReplica = new AtomicInteger();
+	private final LongAdder primaryConnections = new LongAdder();
+	private ScheduledExecutorService healthChecker;
+
+	/**
+	 * @param primary             the pool of the writes , and of the reads when no replica is in the rotation , closed with this data source
+	 * @param replicas            the pools of the replicas by replica name , closed with this data source
+	 * @param maxLagMillis        the replay lag above which a replica is out of the rotation
+	 * @param checkIntervalMillis the interval of the replica health checks , 0 to only check them by {@link #checkReplicas()}
+	 */
+	public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, long maxLagMillis, long checkIntervalMillis) {
+		this.primary = primary;
+		replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+		this.maxLagMillis = maxLagMillis;
+		this.checkIntervalMillis = checkIntervalMillis;
+		setTargetDataSource(new Router());
+	}
+
+	/**
+	 * the first health check runs before the data source is used , so the replicas are in the rotation from the start
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		super.afterPropertiesSet();
+		checkReplicas();
+		if (checkIntervalMillis > 0 && !replicas.isEmpty()) {
+			healthChecker = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("customer-replica-check-"));
+			healthChecker.scheduleWithFixedDelay(this::checkReplicas, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * run a read on the primary even if its transaction is read only , the connection is routed at the first statement so the
+	 * transaction can start before or within the read
+	 *
+	 * @param read the read , on the calling thread
+	 * @return the result of the read
+	 */
+	public static <T> T readFromPrimary(Supplier<T> read) {
+		if (isReadingFromPrimary()) {
+			return read.get();
+		}
+		READING_FROM_PRIMARY.set(true);
+		try {
+			return read.get();
+		} finally {
+			READING_FROM_PRIMARY.remove();
+		}
+	}
+
+	/**
+	 * @return true if the calling thread runs a read of {@link #readFromPrimary(Supplier)}
+	 */
+	public static boolean isReadingFromPrimary() {
+		return READING_FROM_PRIMARY.get();
+	}
+
+	private Connection routedConnection() throws SQLException {
+		if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !isReadingFromPrimary()) {
+			for (int i = 0; i < replicas.size(); i++) {
+				Replica replica = replicas.get(Math.floorMod(nextReplica.getAndIncrement(), replicas.size()));
+				if (replica.isInRotation(maxLagMillis)) {
+					try {
+						Connection connection = replica.dataSource.getConnection();
+						replica.connections.increment();
+						return connection;
+					} catch (SQLException e) {
+						log.warn("no connection from the replica {} , it is out of the rotation until its next passing health check", replica.name, e);
+						replica.healthy = false;
+					}
+				}
+			}
+		}
+		primaryConnections.increment();
+		return primary.getConnection();
+	}
+
+	/**
+	 * check the replicas now , a replica which can not be queried is out of the rotation
+	 */
+	public void checkReplicas() {
+		for (Replica replica : replicas) {
+			try (Connection connection = replica.dataSource.getConnection();
+			     Statement statement = connection.createStatement()) {
+				statement.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(checkIntervalMillis)));
+				String lagQuery = connection.getMetaData().getDatabaseMajorVersion() >= 10 ? LAG_QUERY : LAG_QUERY_9;
+				try (ResultSet lag = statement.executeQuery(lagQuery)) {
+					lag.next();
+					replica.lagMillis = lag.getLong(1);
+				}
+				boolean wasInRotation = replica.isInRotation(maxLagMillis);
+				boolean wasLagging = replica.healthy && !wasInRotation;
+				replica.healthy = true;
+				if (replica.isInRotation(maxLagMillis)) {
+					if (!wasInRotation) {
+						log.info("the replica {} is in the rotation , {} ms behind the primary", replica.name, replica.lagMillis);
+					}
+				} else if (!wasLagging) {
+					log.warn("the replica {} is {} ms behind the primary , more than the max lag of {} ms , it is out of the rotation",
+							replica.name, replica.lagMillis, maxLagMillis);
+				}
+			} catch (SQLException | RuntimeException e) {
+				if (replica.healthy) {
+					log.warn("the health check of the replica {} failed , it is out of the rotation", replica.name, e);
+				}
+				replica.healthy = false;
+			}
+		}
+	}
+
+	/**
+	 * @return the names of the replicas in the rotation
+	 */
+	public List<String> getReplicasInRotation() {
+		List<String> inRotation = new ArrayList<>();
+		replicas.stream().filter(replica -> replica.isInRotation(maxLagMillis)).forEach(replica -> inRotation.add(replica.name));
+		return inRotation;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry meterRegistry) {
+		FunctionCounter.builder(ROUTED_CONNECTIONS, primaryConnections, LongAdder::sum)
+				.description("the connections routed to the primary or to a replica")
+				.tag("target", PRIMARY)
+				.register(meterRegistry);
+		for (Replica replica : replicas) {
+			FunctionCounter.builder(ROUTED_CONNECTIONS, replica.connections, LongAdder::sum)
+					.description("the connections routed to the primary or to a replica")
+					.tag("target", replica.name)
+					.register(meterRegistry);
+			TimeGauge.builder(REPLICA_LAG, replica, TimeUnit.MILLISECONDS, meteredReplica -> meteredReplica.lagMillis)
+					.description("the replay lag of the replica behind the primary at its last health check")
+					.tag("replica", replica.name)
+					.register(meterRegistry);
+			Gauge.builder(REPLICA_IN_ROTATION, replica, meteredReplica -> meteredReplica.isInRotation(maxLagMillis) ? 1 : 0)
+					.description("1 if the replica serves the reads , 0 if it is unhealthy or too far behind the primary")
+					.tag("replica", replica.name)
+					.register(meterRegistry);
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if (healthChecker != null) {
+			healthChecker.shutdownNow();
+		}
+		for (Replica replica : replicas) {
+			close(replica.dataSource);
+		}
+		close(primary);
+	}
+
+	private static void close(DataSource pool) throws Exception {
+		if (pool instanceof AutoCloseable) {
+			((AutoCloseable) pool).close();
+		}
+	}
+
+	/**
+	 * the target of the lazy connections
+	 */
+	private final class Router extends AbstractDataSource {
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			return routedConnection();
+		}
+
+		@Override
+		public Connection getConnection(String username, String password) throws SQLException {
+			// the replica pools have their own credentials , a connection of other credentials is a primary one
+			primaryConnections.increment();
+			return primary.getConnection(username, password);
+		}
+	}
+
+	private static final class Replica {
+		private final String name;
+		private final DataSource dataSource;
+		private final LongAdder connections = new LongAdder();
+		private volatile boolean healthy;
+		private volatile long lagMillis;
+
+		private Replica(String name, DataSource dataSource) {
+			this.name = name;
+			this.dataSource = dataSource;
+		}
+
+		private boolean isInRotation(long maxLagMillis) {
+			return healthy && lagMillis <= maxLagMillis;
+		}
+	}
+}
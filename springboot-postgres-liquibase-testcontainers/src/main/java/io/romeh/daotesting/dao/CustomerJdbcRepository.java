@@ -0,0 +1,52 @@
+package io.romeh.daotesting.dao;
+
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import io.romeh.daotesting.domain.Customer;
+
+/**
+ * plain jdbc customer queries for the cases where going through the JPA persistence context does not make sense
+ */
+@Repository
+public class CustomerJdbcRepository {
+
+	private static final String SELECT_ALL_ORDERED_BY_ID = "SELECT id, name, address, is_active FROM customer ORDER BY id";
+
+	private final JdbcTemplate streamingJdbcTemplate;
+
+	/**
+	 * @param dataSource the db data source
+	 * @param fetchSize  the number of rows fetched per round trip by the streaming queries
+	 */
+	@Autowired
+	public CustomerJdbcRepository(DataSource dataSource, @Value("${customers.export.fetch-size:1000}") int fetchSize) {
+		this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+		this.streamingJdbcTemplate.setFetchSize(fetchSize);
+	}
+
+	/**
+	 * stream all the customers ordered by id through a forward only cursor , only fetch size rows are in memory at a time ,
+	 * the postgres driver only uses a cursor when auto commit is off hence the transaction
+	 *
+	 * @param consumer the consumer of every customer row , the passed customers are not managed entities
+	 */
+	@Transactional(readOnly = true)
+	public void streamAllCustomers(Consumer<Customer> consumer) {
+		streamingJdbcTemplate.query(SELECT_ALL_ORDERED_BY_ID, resultSet -> {
+			consumer.accept(Customer.builder()
+					.id(resultSet.getLong("id"))
+					.name(resultSet.getString("name"))
+					.address(resultSet.getString("address"))
+					.is_active(resultSet.getBoolean("is_active"))
+					.build());
+		});
+	}
+}
@@ -1,19 +1,101 @@
 package io.romeh.daotesting.dao;
 
+import static java.util.stream.Collectors.joining;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import javax.persistence.LockModeType;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.dto.CustomerDto;
 
 /**
- * main customer repository
+ * main customer repository ,
+ * the reads run in read only transactions , hibernate then keeps no dirty checking snapshot of the loaded entities and does not flush
  */
 @Repository
 @Transactional
 public interface CustomerRepository extends CrudRepository<Customer, Long> {
 
+	String CUSTOMER_DTO = "new io.romeh.daotesting.rest.dto.CustomerDto(c.id, c.name, c.address, c.is_active)";
+
+	@Override
+	@Transactional(readOnly = true)
+	Optional<Customer> findById(Long id);
+
+	@Transactional(readOnly = true)
 	Optional<Customer> findCustomerByName(String name);
+
+	@Transactional(readOnly = true)
+	Optional<Customer> findCustomerByNameIgnoreCase(String name);
+
+	/**
+	 * keyset pagination , the page starts right after the last id of the previous page so it is an index range scan
+	 * whatever the position of the page , the pageable is only used for its size
+	 */
+	@Transactional(readOnly = true)
+	List<Customer> findByIdGreaterThanOrderByIdAsc(long afterId, Pageable pageable);
+
+	/**
+	 * the same keyset page as {@link #findByIdGreaterThanOrderByIdAsc} , read straight into the dtos , no entity is created
+	 * nor managed by the persistence context
+	 */
+	@Transactional(readOnly = true)
+	@Query("SELECT " + CUSTOMER_DTO + " FROM customer c WHERE c.id > :afterId ORDER BY c.id")
+	List<CustomerDto> findDtosAfter(@Param("afterId") long afterId, Pageable pageable);
+
+	/**
+	 * update the customer if it is still at the given version , in one statement without any lock held between the read of the version
+	 * and the update , the persistence context is not aware of the update
+	 *
+	 * @return 1 if the customer was updated , 0 if there is no such customer or it is at another version
+	 */
+	@Modifying
+	@Query("UPDATE customer c SET c.name = :name , c.address = :address , c.is_active = :active , c.version = c.version + 1"
+			+ " WHERE c.id = :id AND c.version = :version")
+	int updateIfVersion(@Param("id") long id, @Param("version") long version, @Param("name") String name,
+	                    @Param("address") String address, @Param("active") boolean active);
+
+	/**
+	 * the version of the customer without the rest of its row , enough to answer a conditional GET
+	 */
+	@Transactional(readOnly = true)
+	@Query("SELECT c.version FROM customer c WHERE c.id = :id")
+	Optional<Long> findVersionById(@Param("id") long id);
+
+	/**
+	 * the version of the customer , its row stays locked until the end of the transaction so the version is still the same
+	 * when the update of the transaction runs
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT c.version FROM customer c WHERE c.id = :id")
+	Optional<Long> findVersionForUpdate(@Param("id") long id);
+
+	/**
+	 * all the customers of the given ids in one query , unlike an IN list the sql is the same whatever the number of ids
+	 * so it is a single prepared statement on the postgres side
+	 *
+	 * @param ids the customer ids , the missing ones are just not in the result
+	 */
+	default List<Customer> findAllByIdAny(Collection<Long> ids) {
+		return findAllByIdArray(ids.stream().map(String::valueOf).collect(joining(",", "{", "}")));
+	}
+
+	/**
+	 * @param ids a postgres bigint array literal like {1,2,3}
+	 */
+	@Transactional(readOnly = true)
+	@Query(value = "SELECT * FROM customer WHERE id = ANY(CAST(:ids AS bigint[]))", nativeQuery = true)
+	List<Customer> findAllByIdArray(@Param("ids") String ids);
 }
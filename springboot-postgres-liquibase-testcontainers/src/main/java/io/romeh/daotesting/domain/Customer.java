@@ -1,7 +1,11 @@
 package io.romeh.daotesting.domain;
 
 import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Version;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -16,10 +20,20 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @Builder
 public class Customer {
+	/**
+	 * pooled sequence ids , one nextval call reserves allocationSize ids so inserts do not need an id round trip and can be batched
+	 */
 	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_id_seq")
+	@SequenceGenerator(name = "customer_id_seq", sequenceName = "customer_id_seq", allocationSize = 50)
 	private long id;
 	private String name;
 	private String address;
 	private boolean is_active;
+	/**
+	 * incremented by every update , an update of an entity loaded at an older version fails instead of overwriting the newer one
+	 */
+	@Version
+	private long version;
 
 }
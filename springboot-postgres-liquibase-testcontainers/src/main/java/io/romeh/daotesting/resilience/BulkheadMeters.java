@@ -0,0 +1,47 @@
+package io.romeh.daotesting.resilience;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * @author romeh
+ * the meters of one bulkhead , all tagged with the bulkhead name :
+ * <ul>
+ * <li>resilience4j.bulkhead.available.concurrent.calls , the calls the bulkhead still lets in right now</li>
+ * <li>resilience4j.bulkhead.max.concurrent.calls , the configured max , to alert on the ratio of the two</li>
+ * <li>resilience4j.bulkhead.rejected , the calls rejected as the bulkhead was full for the max wait time</li>
+ * </ul>
+ */
+public class BulkheadMeters implements MeterBinder {
+
+	static final String AVAILABLE_CONCURRENT_CALLS = "resilience4j.bulkhead.available.concurrent.calls";
+	static final String MAX_CONCURRENT_CALLS = "resilience4j.bulkhead.max.concurrent.calls";
+	static final String REJECTED = "resilience4j.bulkhead.rejected";
+
+	private final Bulkhead bulkhead;
+
+	public BulkheadMeters(Bulkhead bulkhead) {
+		this.bulkhead = bulkhead;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry meterRegistry) {
+		String name = bulkhead.getName();
+		Gauge.builder(AVAILABLE_CONCURRENT_CALLS, bulkhead, meteredBulkhead -> meteredBulkhead.getMetrics().getAvailableConcurrentCalls())
+				.description("the number of calls the bulkhead still lets in")
+				.tag("name", name)
+				.register(meterRegistry);
+		Gauge.builder(MAX_CONCURRENT_CALLS, bulkhead, meteredBulkhead -> meteredBulkhead.getBulkheadConfig().getMaxConcurrentCalls())
+				.description("the max number of concurrent calls of the bulkhead")
+				.tag("name", name)
+				.register(meterRegistry);
+		Counter rejected = Counter.builder(REJECTED)
+				.description("the number of calls rejected as the bulkhead was full")
+				.tag("name", name)
+				.register(meterRegistry);
+		bulkhead.getEventPublisher().onCallRejected(event -> rejected.increment());
+	}
+}
@@ -0,0 +1,74 @@
+package io.romeh.daotesting.resilience;
+
+import java.util.Locale;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * @author romeh
+ * the meters of one circuit breaker , all tagged with the circuit breaker name :
+ * <ul>
+ * <li>resilience4j.circuitbreaker.state , 1 for the current state and 0 for the other ones , tagged with the state</li>
+ * <li>resilience4j.circuitbreaker.transitions , the state transitions , tagged with the from and to states</li>
+ * <li>resilience4j.circuitbreaker.not.permitted , the calls rejected as the circuit breaker was open</li>
+ * <li>resilience4j.circuitbreaker.failure.rate , the failure rate of the ring buffer of the current state , -1 until it is full</li>
+ * <li>resilience4j.circuitbreaker.buffered.calls , the calls in the ring buffer of the current state</li>
+ * </ul>
+ * the transitions and the rejected calls are counted from the circuit breaker events as the circuit breaker metrics
+ * are reset on each transition
+ */
+public class CircuitBreakerMeters implements MeterBinder {
+
+	static final String STATE = "resilience4j.circuitbreaker.state";
+	static final String TRANSITIONS = "resilience4j.circuitbreaker.transitions";
+	static final String NOT_PERMITTED = "resilience4j.circuitbreaker.not.permitted";
+	static final String FAILURE_RATE = "resilience4j.circuitbreaker.failure.rate";
+	static final String BUFFERED_CALLS = "resilience4j.circuitbreaker.buffered.calls";
+
+	private final CircuitBreaker circuitBreaker;
+
+	public CircuitBreakerMeters(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry meterRegistry) {
+		String name = circuitBreaker.getName();
+		for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+			Gauge.builder(STATE, circuitBreaker, breaker -> breaker.getState() == state ? 1 : 0)
+					.description("1 for the current state of the circuit breaker , 0 for the other ones")
+					.tags("name", name, "state", tagValue(state))
+					.register(meterRegistry);
+		}
+		Gauge.builder(FAILURE_RATE, circuitBreaker, breaker -> breaker.getMetrics().getFailureRate())
+				.description("the failure rate of the calls in the ring buffer , -1 until the ring buffer is full")
+				.tag("name", name)
+				.baseUnit("percent")
+				.register(meterRegistry);
+		Gauge.builder(BUFFERED_CALLS, circuitBreaker, breaker -> breaker.getMetrics().getNumberOfBufferedCalls())
+				.description("the number of calls in the ring buffer")
+				.tag("name", name)
+				.register(meterRegistry);
+		Counter notPermitted = Counter.builder(NOT_PERMITTED)
+				.description("the number of calls rejected as the circuit breaker was open")
+				.tag("name", name)
+				.register(meterRegistry);
+		circuitBreaker.getEventPublisher()
+				.onCallNotPermitted(event -> notPermitted.increment())
+				.onStateTransition(event -> Counter.builder(TRANSITIONS)
+						.description("the number of state transitions of the circuit breaker")
+						.tags("name", name,
+								"from", tagValue(event.getStateTransition().getFromState()),
+								"to", tagValue(event.getStateTransition().getToState()))
+						.register(meterRegistry)
+						.increment());
+	}
+
+	private static String tagValue(CircuitBreaker.State state) {
+		return state.name().toLowerCase(Locale.ROOT);
+	}
+}
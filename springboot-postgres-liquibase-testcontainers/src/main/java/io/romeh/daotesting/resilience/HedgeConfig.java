@@ -0,0 +1,95 @@
+package io.romeh.daotesting.resilience;
+
+import java.time.Duration;
+
+/**
+ * @author romeh
+ * the config of a {@link HedgedExecutor} , when to fire the second attempt and how many second attempts at most
+ */
+public final class HedgeConfig {
+
+	private double delayPercentile = 0.95;
+	private Duration minDelay = Duration.ofMillis(1);
+	private Duration maxDelay = Duration.ofSeconds(1);
+	private double maxHedgeRatio = 0.1;
+	private Duration window = Duration.ofSeconds(10);
+
+	private HedgeConfig() {
+	}
+
+	/**
+	 * hedge after the p95 attempt latency , bounded to [1 ms , 1 s] , at most 10% of the calls over 10 seconds
+	 */
+	public static HedgeConfig ofDefaults() {
+		return custom().build();
+	}
+
+	public static Builder custom() {
+		return new Builder();
+	}
+
+	public double getDelayPercentile() {
+		return delayPercentile;
+	}
+
+	public Duration getMinDelay() {
+		return minDelay;
+	}
+
+	public Duration getMaxDelay() {
+		return maxDelay;
+	}
+
+	public double getMaxHedgeRatio() {
+		return maxHedgeRatio;
+	}
+
+	public Duration getWindow() {
+		return window;
+	}
+
+	public static final class Builder {
+		private final HedgeConfig config = new HedgeConfig();
+
+		private Builder() {
+		}
+
+		/**
+		 * @param delayPercentile the percentile of the recent attempt latencies after which the second attempt is fired , 0.95 for p95
+		 */
+		public Builder delayPercentile(double delayPercentile) {
+			if (delayPercentile <= 0 || delayPercentile >= 1) {
+				throw new IllegalArgumentException("the delay percentile must be between 0 and 1 , got " + delayPercentile);
+			}
+			config.delayPercentile = delayPercentile;
+			return this;
+		}
+
+		/**
+		 * @param minDelay the hedge delay lower bound , so the very fast calls are not hedged for nothing
+		 * @param maxDelay the hedge delay upper bound , it is the delay until enough latencies are known
+		 */
+		public Builder delayBounds(Duration minDelay, Duration maxDelay) {
+			if (minDelay.isNegative() || maxDelay.compareTo(minDelay) < 0) {
+				throw new IllegalArgumentException("invalid hedge delay bounds [" + minDelay + " , " + maxDelay + "]");
+			}
+			config.minDelay = minDelay;
+			config.maxDelay = maxDelay;
+			return this;
+		}
+
+		/**
+		 * @param maxHedgeRatio the max number of second attempts per call , 0.1 for at most 10% more calls
+		 * @param window        the sliding window the calls and second attempts are counted over
+		 */
+		public Builder maxHedgeRatio(double maxHedgeRatio, Duration window) {
+			config.maxHedgeRatio = maxHedgeRatio;
+			config.window = window;
+			return this;
+		}
+
+		public HedgeConfig build() {
+			return config;
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package io.romeh.daotesting.resilience;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+
+/**
+ * @author romeh
+ * hedged calls for the idempotent reads , where the retries only help the failed calls this helps the slow ones :
+ * when the first attempt is still running after the hedge delay a second one is fired and the first successful result is taken ,
+ * the hedge delay follows the configured percentile of the recent attempt latencies so only the tail is hedged ,
+ * and a {@link RetryBudget} caps the second attempts to a ratio of the calls so a slow backend is not sent twice its load ,
+ * the attempts run on the given executor , the losing attempt is not interrupted and runs until it ends ,
+ * the meters are tagged with the name :
+ * <ul>
+ * <li>resilience4j.hedge.calls , the calls by outcome , not_hedged , primary_won , hedge_won or failed</li>
+ * <li>resilience4j.hedge.rejected , the second attempts not fired as the hedge budget was spent or the executor was full</li>
+ * <li>resilience4j.hedge.delay , the current hedge delay</li>
+ * </ul>
+ */
+public final class HedgedExecutor {
+
+	static final String CALLS = "resilience4j.hedge.calls";
+	static final String REJECTED = "resilience4j.hedge.rejected";
+	static final String DELAY = "resilience4j.hedge.delay";
+
+	private final Executor executor;
+	private final ScheduledExecutorService scheduler;
+	private final RetryBudget hedgeBudget;
+	private final LatencyWindow latencies;
+	private final Counter notHedged;
+	private final Counter primaryWon;
+	private final Counter hedgeWon;
+	private final Counter failed;
+	private final AtomicLong rejectedHedges = new AtomicLong();
+
+	private HedgedExecutor(String name, HedgeConfig hedgeConfig, Executor executor, ScheduledExecutorService scheduler,
+	                       MeterRegistry meterRegistry) {
+		this.executor = executor;
+		this.scheduler = scheduler;
+		this.hedgeBudget = RetryBudget.of(hedgeConfig.getMaxHedgeRatio(), 0, hedgeConfig.getWindow());
+		this.latencies = new LatencyWindow(hedgeConfig);
+		this.notHedged = calls(name, "not_hedged", meterRegistry);
+		this.primaryWon = calls(name, "primary_won", meterRegistry);
+		this.hedgeWon = calls(name, "hedge_won", meterRegistry);
+		this.failed = calls(name, "failed", meterRegistry);
+		FunctionCounter.builder(REJECTED, rejectedHedges, AtomicLong::get)
+				.description("the number of second attempts not fired as the hedge budget was spent or the executor was full")
+				.tag("name", name)
+				.register(meterRegistry);
+		TimeGauge.builder(DELAY, latencies, TimeUnit.NANOSECONDS, LatencyWindow::getHedgeDelayNanos)
+				.description("the time after which a second attempt is fired")
+				.tag("name", name)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * @param name          the hedged calls name , the meters tag
+	 * @param hedgeConfig   when to hedge and how often at most
+	 * @param executor      the executor running the attempts , when it rejects a first attempt it runs on the caller thread
+	 * @param scheduler     the scheduler of the hedge timers , see {@link ShardedScheduledExecutorService}
+	 * @param meterRegistry where to record the hedge meters
+	 */
+	public static HedgedExecutor of(String name, HedgeConfig hedgeConfig, Executor executor, ScheduledExecutorService scheduler,
+	                                MeterRegistry meterRegistry) {
+		return new HedgedExecutor(name, hedgeConfig, executor, scheduler, meterRegistry);
+	}
+
+	private static Counter calls(String name, String outcome, MeterRegistry meterRegistry) {
+		return Counter.builder(CALLS)
+				.description("the number of hedged calls by outcome")
+				.tag("name", name)
+				.tag("outcome", outcome)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * @return the current hedge delay
+	 */
+	public long getHedgeDelayNanos() {
+		return latencies.getHedgeDelayNanos();
+	}
+
+	/**
+	 * @param supplier the idempotent call , it may run twice at the same time
+	 * @return the first successful result , or the failure of the last failed attempt
+	 */
+	public <T> CompletableFuture<T> executeSupplier(Supplier<T> supplier) {
+		HedgedCall<T> call = new HedgedCall<>(supplier);
+		hedgeBudget.recordCall();
+		try {
+			executor.execute(() -> call.attempt(false));
+		} catch (RejectedExecutionException e) {
+			call.attempt(false);
+		}
+		if (!call.result.isDone()) {
+			ScheduledFuture<?> hedgeTimer = scheduler.schedule(call::hedge, latencies.getHedgeDelayNanos(), TimeUnit.NANOSECONDS);
+			call.result.whenComplete((value, throwable) -> hedgeTimer.cancel(false));
+		}
+		return call.result;
+	}
+
+	private final class HedgedCall<T> {
+		private final Supplier<T> supplier;
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+		private final AtomicInteger runningAttempts = new AtomicInteger(1);
+		private final AtomicBoolean ended = new AtomicBoolean();
+		private volatile boolean hedged;
+		private volatile Throwable lastFailure;
+
+		private HedgedCall(Supplier<T> supplier) {
+			this.supplier = supplier;
+		}
+
+		private void attempt(boolean hedge) {
+			long start = System.nanoTime();
+			T value;
+			try {
+				value = supplier.get();
+			} catch (Throwable e) {
+				lastFailure = e;
+				// a failed attempt only fails the call when the other one is not running anymore
+				if (runningAttempts.decrementAndGet() == 0) {
+					fail(e);
+				}
+				return;
+			}
+			latencies.record(System.nanoTime() - start);
+			// the outcome is counted before the result is given , so the caller sees the meters of its call
+			if (ended.compareAndSet(false, true)) {
+				(!hedged ? notHedged : hedge ? hedgeWon : primaryWon).increment();
+				result.complete(value);
+			}
+		}
+
+		private void fail(Throwable failure) {
+			if (ended.compareAndSet(false, true)) {
+				failed.increment();
+				result.completeExceptionally(failure);
+			}
+		}
+
+		private void hedge() {
+			if (ended.get()) {
+				return;
+			}
+			if (hedgeBudget.getAvailableRetries() <= 0) {
+				rejectedHedges.incrementAndGet();
+				return;
+			}
+			// the first attempt failed in the meantime , the call is already failed
+			if (runningAttempts.getAndIncrement() == 0) {
+				return;
+			}
+			hedged = true;
+			hedgeBudget.recordRetry();
+			try {
+				executor.execute(() -> attempt(true));
+			} catch (RejectedExecutionException e) {
+				rejectedHedges.incrementAndGet();
+				hedged = false;
+				if (runningAttempts.decrementAndGet() == 0) {
+					fail(lastFailure);
+				}
+			}
+		}
+	}
+
+	/**
+	 * the last attempt latencies , the hedge delay is their configured percentile , computed again every RECOMPUTE_EVERY latencies ,
+	 * the ring is written without locking so a few latencies can be lost under concurrency , which does not matter for a percentile
+	 */
+	private static final class LatencyWindow {
+		private static final int SIZE = 1024;
+		private static final int RECOMPUTE_EVERY = 128;
+
+		private final AtomicLongArray ring = new AtomicLongArray(SIZE);
+		private final AtomicLong recorded = new AtomicLong();
+		private final double percentile;
+		private final long minDelayNanos;
+		private final long maxDelayNanos;
+		private volatile long hedgeDelayNanos;
+
+		private LatencyWindow(HedgeConfig hedgeConfig) {
+			this.percentile = hedgeConfig.getDelayPercentile();
+			this.minDelayNanos = hedgeConfig.getMinDelay().toNanos();
+			this.maxDelayNanos = hedgeConfig.getMaxDelay().toNanos();
+			this.hedgeDelayNanos = maxDelayNanos;
+		}
+
+		private long getHedgeDelayNanos() {
+			return hedgeDelayNanos;
+		}
+
+		private void record(long latencyNanos) {
+			long index = recorded.getAndIncrement();
+			ring.set((int) (index % SIZE), latencyNanos);
+			if ((index + 1) % RECOMPUTE_EVERY == 0) {
+				recompute(Math.min(index + 1, SIZE));
+			}
+		}
+
+		private void recompute(long sampleCount) {
+			long[] samples = new long[(int) sampleCount];
+			for (int i = 0; i < samples.length; i++) {
+				samples[i] = ring.get(i);
+			}
+			Arrays.sort(samples);
+			long percentileNanos = samples[(int) Math.min(samples.length - 1, Math.ceil(samples.length * percentile) - 1)];
+			hedgeDelayNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, percentileNanos));
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package io.romeh.daotesting.resilience;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import io.github.resilience4j.retry.AsyncRetry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * @author romeh
+ * the {@link AsyncRetry} counterpart of {@link MeteredRetry} , same meters , the backoff being the time the attempts waited
+ * on the scheduler
+ */
+public final class MeteredAsyncRetry {
+
+	private final AsyncRetry retry;
+	private final ScheduledExecutorService scheduler;
+	private final RetryMeters meters;
+
+	private MeteredAsyncRetry(AsyncRetry retry, ScheduledExecutorService scheduler, MeterRegistry meterRegistry, RetryBudget retryBudget,
+	                          RetryConfig retryConfig) {
+		this.retry = retry;
+		this.scheduler = scheduler;
+		this.meters = new RetryMeters(retry.getName(), meterRegistry, retryBudget, retryConfig);
+	}
+
+	/**
+	 * @param retry         the retry to decorate the calls with
+	 * @param scheduler     the scheduler of the retried attempts
+	 * @param meterRegistry where to record the retry meters , tagged with the retry name
+	 */
+	public static MeteredAsyncRetry of(AsyncRetry retry, ScheduledExecutorService scheduler, MeterRegistry meterRegistry) {
+		return new MeteredAsyncRetry(retry, scheduler, meterRegistry, null, retry.getRetryConfig());
+	}
+
+	/**
+	 * @param name          the retry name
+	 * @param retryConfig   the retry config , only retrying while the retry budget allows it
+	 * @param retryBudget   the retry budget , it can be shared by several retries to cap them together
+	 * @param scheduler     the scheduler of the retried attempts
+	 * @param meterRegistry where to record the retry meters , tagged with the retry name
+	 */
+	public static MeteredAsyncRetry of(String name, RetryConfig retryConfig, RetryBudget retryBudget, ScheduledExecutorService scheduler,
+	                                   MeterRegistry meterRegistry) {
+		return new MeteredAsyncRetry(AsyncRetry.of(name, retryBudget.limit(retryConfig)), scheduler, meterRegistry, retryBudget, retryConfig);
+	}
+
+	public AsyncRetry getRetry() {
+		return retry;
+	}
+
+	public <T> Supplier<CompletionStage<T>> decorateCompletionStage(Supplier<CompletionStage<T>> supplier) {
+		return () -> executeCompletionStage(supplier);
+	}
+
+	public <T> CompletionStage<T> executeCompletionStage(Supplier<CompletionStage<T>> supplier) {
+		RetryMeters.Call call = meters.startCall();
+		CompletionStage<T> result = AsyncRetry.decorateCompletionStage(retry, scheduler, () -> {
+			long attemptStart = call.attemptStarted();
+			CompletionStage<T> attempt;
+			try {
+				attempt = supplier.get();
+			} catch (RuntimeException e) {
+				call.attemptEnded(attemptStart);
+				throw e;
+			}
+			// the attempt end is recorded before the retry looks at the outcome , so before the next attempt is scheduled
+			return relay(attempt, (value, throwable) -> call.attemptEnded(attemptStart));
+		}).get();
+		return relay(result, call::ended);
+	}
+
+	/**
+	 * @return a stage completed like the given one once the callback ran , with the same exception and not a CompletionException
+	 * like whenComplete would do , so the retry exception predicates see the attempt exception itself
+	 */
+	private static <T> CompletionStage<T> relay(CompletionStage<T> stage, BiConsumer<? super T, Throwable> callback) {
+		CompletableFuture<T> relayed = new CompletableFuture<>();
+		stage.whenComplete((value, throwable) -> {
+			callback.accept(value, throwable);
+			if (throwable == null) {
+				relayed.complete(value);
+			} else {
+				relayed.completeExceptionally(throwable);
+			}
+		});
+		return relayed;
+	}
+}
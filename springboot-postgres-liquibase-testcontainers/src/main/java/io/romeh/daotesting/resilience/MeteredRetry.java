@@ -0,0 +1,100 @@
+package io.romeh.daotesting.resilience;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * @author romeh
+ * a {@link Retry} which records what its retries cost , the attempts per call , the backoff time , the success after retry vs exhausted
+ * calls and the latency added by the retries , see {@link RetryMeters} for the meter names ,
+ * the numbers to look at before tuning the max attempts and the interval function of the retry config
+ */
+public final class MeteredRetry {
+
+	private final Retry retry;
+	private final RetryMeters meters;
+
+	private MeteredRetry(Retry retry, MeterRegistry meterRegistry, RetryBudget retryBudget, RetryConfig retryConfig) {
+		this.retry = retry;
+		this.meters = new RetryMeters(retry.getName(), meterRegistry, retryBudget, retryConfig);
+	}
+
+	/**
+	 * @param retry         the retry to decorate the calls with
+	 * @param meterRegistry where to record the retry meters , tagged with the retry name
+	 */
+	public static MeteredRetry of(Retry retry, MeterRegistry meterRegistry) {
+		return new MeteredRetry(retry, meterRegistry, null, retry.getRetryConfig());
+	}
+
+	/**
+	 * @param name          the retry name
+	 * @param retryConfig   the retry config , only retrying while the retry budget allows it
+	 * @param retryBudget   the retry budget , it can be shared by several retries to cap them together
+	 * @param meterRegistry where to record the retry meters , tagged with the retry name
+	 */
+	public static MeteredRetry of(String name, RetryConfig retryConfig, RetryBudget retryBudget, MeterRegistry meterRegistry) {
+		return new MeteredRetry(Retry.of(name, retryBudget.limit(retryConfig)), meterRegistry, retryBudget, retryConfig);
+	}
+
+	public Retry getRetry() {
+		return retry;
+	}
+
+	public <T> Supplier<T> decorateSupplier(Supplier<T> supplier) {
+		return () -> executeSupplier(supplier);
+	}
+
+	public <T> Callable<T> decorateCallable(Callable<T> callable) {
+		return () -> executeCallable(callable);
+	}
+
+	public Runnable decorateRunnable(Runnable runnable) {
+		return () -> executeSupplier(() -> {
+			runnable.run();
+			return null;
+		});
+	}
+
+	public <T> T executeSupplier(Supplier<T> supplier) {
+		RetryMeters.Call call = meters.startCall();
+		try {
+			T result = retry.executeSupplier(() -> {
+				long attemptStart = call.attemptStarted();
+				try {
+					return supplier.get();
+				} finally {
+					call.attemptEnded(attemptStart);
+				}
+			});
+			call.ended(result, null);
+			return result;
+		} catch (RuntimeException | Error e) {
+			call.ended(null, e);
+			throw e;
+		}
+	}
+
+	public <T> T executeCallable(Callable<T> callable) throws Exception {
+		RetryMeters.Call call = meters.startCall();
+		try {
+			T result = retry.executeCallable(() -> {
+				long attemptStart = call.attemptStarted();
+				try {
+					return callable.call();
+				} finally {
+					call.attemptEnded(attemptStart);
+				}
+			});
+			call.ended(result, null);
+			return result;
+		} catch (Exception | Error e) {
+			call.ended(null, e);
+			throw e;
+		}
+	}
+}
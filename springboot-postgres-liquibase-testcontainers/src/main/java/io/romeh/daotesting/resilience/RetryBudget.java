@@ -0,0 +1,145 @@
+package io.romeh.daotesting.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import io.github.resilience4j.retry.RetryConfig;
+
+/**
+ * @author romeh
+ * cap the retries to a ratio of the calls over a sliding window , so a slow or down db sees at most (1 + ratio) times the normal load
+ * instead of max attempts times ,
+ * it is a token bucket whose tokens expire with the window : each call deposits ratio tokens , each retry withdraws one ,
+ * plus a reserve of min retries per second so the low traffic calls can still retry ,
+ * the window is split in 10 slots which are recycled as the time goes , the counters are not locked so the limit is approximate
+ * under concurrency , a few retries may go over it
+ */
+public final class RetryBudget {
+
+	private static final int SLOT_COUNT = 10;
+
+	private final double retryRatio;
+	private final long reservedRetries;
+	private final long slotNanos;
+	private final LongSupplier nanoClock;
+	private final AtomicLongArray slotEpochs = new AtomicLongArray(SLOT_COUNT);
+	private final AtomicLongArray slotCalls = new AtomicLongArray(SLOT_COUNT);
+	private final AtomicLongArray slotRetries = new AtomicLongArray(SLOT_COUNT);
+	private final LongAdder rejectedRetries = new LongAdder();
+
+	RetryBudget(double retryRatio, int minRetriesPerSecond, Duration window, LongSupplier nanoClock) {
+		if (retryRatio < 0) {
+			throw new IllegalArgumentException("the retry ratio can not be negative , got " + retryRatio);
+		}
+		if (window.toMillis() < SLOT_COUNT) {
+			throw new IllegalArgumentException("the window must be at least " + SLOT_COUNT + " ms , got " + window);
+		}
+		this.retryRatio = retryRatio;
+		this.reservedRetries = (long) Math.ceil(minRetriesPerSecond * window.toMillis() / 1000d);
+		this.slotNanos = window.toNanos() / SLOT_COUNT;
+		this.nanoClock = nanoClock;
+		long currentEpoch = epoch();
+		for (int i = 0; i < SLOT_COUNT; i++) {
+			slotEpochs.set(i, currentEpoch - SLOT_COUNT);
+		}
+	}
+
+	/**
+	 * @param retryRatio          the max retries per call over the window , 0.1 for at most 10% more calls
+	 * @param minRetriesPerSecond the retries allowed whatever the number of calls
+	 * @param window              the sliding window the calls and retries are counted over
+	 */
+	public static RetryBudget of(double retryRatio, int minRetriesPerSecond, Duration window) {
+		return new RetryBudget(retryRatio, minRetriesPerSecond, window, System::nanoTime);
+	}
+
+	/**
+	 * 10% of the calls , 10 retries per second at least , over 10 seconds
+	 */
+	public static RetryBudget ofDefaults() {
+		return of(0.1, 10, Duration.ofSeconds(10));
+	}
+
+	/**
+	 * @return a copy of the retry config which only retries when the budget allows it , the budget is only checked there ,
+	 * the calls , retries and rejected retries are recorded by the {@link MeteredRetry} or {@link MeteredAsyncRetry} running the calls ,
+	 * as the retry tests its predicates on the last attempt too , where a rejection would not have stopped any retry
+	 */
+	public RetryConfig limit(RetryConfig retryConfig) {
+		Predicate<Throwable> exceptionPredicate = retryConfig.getExceptionPredicate();
+		RetryConfig.Builder<Object> limitedConfig = RetryConfig.custom()
+				.maxAttempts(retryConfig.getMaxAttempts())
+				.intervalFunction(attempt -> retryConfig.getIntervalFunction().apply(attempt))
+				.retryOnException(throwable -> exceptionPredicate.test(throwable) && getAvailableRetries() > 0);
+		Predicate<Object> resultPredicate = retryConfig.getResultPredicate();
+		if (resultPredicate != null) {
+			limitedConfig.retryOnResult(result -> resultPredicate.test(result) && getAvailableRetries() > 0);
+		}
+		return limitedConfig.build();
+	}
+
+	/**
+	 * deposit the tokens of a new call
+	 */
+	public void recordCall() {
+		slotCalls.incrementAndGet(currentSlot());
+	}
+
+	/**
+	 * withdraw the token of a retry
+	 */
+	public void recordRetry() {
+		slotRetries.incrementAndGet(currentSlot());
+	}
+
+	/**
+	 * count a retryable outcome which was not retried as the budget was spent
+	 */
+	void recordRejectedRetry() {
+		rejectedRetries.increment();
+	}
+
+	/**
+	 * @return the number of retries the budget allows right now
+	 */
+	public long getAvailableRetries() {
+		long oldestEpoch = epoch() - SLOT_COUNT + 1;
+		long calls = 0;
+		long retries = 0;
+		for (int i = 0; i < SLOT_COUNT; i++) {
+			if (slotEpochs.get(i) >= oldestEpoch) {
+				calls += slotCalls.get(i);
+				retries += slotRetries.get(i);
+			}
+		}
+		return Math.max(0, reservedRetries + (long) (calls * retryRatio) - retries);
+	}
+
+	/**
+	 * @return the number of retryable failures which were not retried as the budget was spent
+	 */
+	public long getRejectedRetryCount() {
+		return rejectedRetries.sum();
+	}
+
+	private long epoch() {
+		return nanoClock.getAsLong() / slotNanos;
+	}
+
+	/**
+	 * @return the index of the current slot , cleared first when it still holds the counters of a previous window
+	 */
+	private int currentSlot() {
+		long currentEpoch = epoch();
+		int slot = (int) Math.floorMod(currentEpoch, (long) SLOT_COUNT);
+		long slotEpoch = slotEpochs.get(slot);
+		if (slotEpoch != currentEpoch && slotEpochs.compareAndSet(slot, slotEpoch, currentEpoch)) {
+			slotCalls.set(slot, 0);
+			slotRetries.set(slot, 0);
+		}
+		return slot;
+	}
+}
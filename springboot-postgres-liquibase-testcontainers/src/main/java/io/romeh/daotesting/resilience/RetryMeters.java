@@ -0,0 +1,161 @@
+package io.romeh.daotesting.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+import io.github.resilience4j.retry.RetryConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * @author romeh
+ * the meters of one retry instance , all tagged with the retry name :
+ * <ul>
+ * <li>resilience4j.retry.calls , the calls by kind , successful or failed , with or without retry ,
+ * so the success after retry vs exhausted ratio is failed_with_retry / (successful_with_retry + failed_with_retry)</li>
+ * <li>resilience4j.retry.attempts , the number of attempts per call</li>
+ * <li>resilience4j.retry.backoff , the time waited between the attempts of the calls which retried</li>
+ * <li>resilience4j.retry.added.latency , the time a call took on top of its first attempt , zero when it did not retry</li>
+ * <li>resilience4j.retry.budget.available and resilience4j.retry.budget.rejected , when there is a retry budget , the retries it allows
+ * right now and the retryable failures it did not let retry</li>
+ * </ul>
+ * the calls , the retries and the retryable outcomes ending a call before its last attempt , so the retries the budget rejected ,
+ * are recorded in the retry budget as well
+ */
+final class RetryMeters {
+
+	static final String CALLS = "resilience4j.retry.calls";
+	static final String ATTEMPTS = "resilience4j.retry.attempts";
+	static final String BACKOFF = "resilience4j.retry.backoff";
+	static final String ADDED_LATENCY = "resilience4j.retry.added.latency";
+	static final String BUDGET_AVAILABLE = "resilience4j.retry.budget.available";
+	static final String BUDGET_REJECTED = "resilience4j.retry.budget.rejected";
+
+	private final Counter successfulWithoutRetry;
+	private final Counter successfulWithRetry;
+	private final Counter failedWithoutRetry;
+	private final Counter failedWithRetry;
+	private final DistributionSummary attempts;
+	private final Timer backoff;
+	private final Timer addedLatency;
+	private final RetryBudget retryBudget;
+	private final RetryConfig retryConfig;
+
+	/**
+	 * @param retryBudget the retry budget to record the calls and retries in , null when there is none
+	 * @param retryConfig the retry config without the budget limit , telling the retryable outcomes apart
+	 */
+	RetryMeters(String name, MeterRegistry meterRegistry, RetryBudget retryBudget, RetryConfig retryConfig) {
+		this.retryBudget = retryBudget;
+		this.retryConfig = retryConfig;
+		this.successfulWithoutRetry = calls(name, "successful_without_retry", meterRegistry);
+		this.successfulWithRetry = calls(name, "successful_with_retry", meterRegistry);
+		this.failedWithoutRetry = calls(name, "failed_without_retry", meterRegistry);
+		this.failedWithRetry = calls(name, "failed_with_retry", meterRegistry);
+		this.attempts = DistributionSummary.builder(ATTEMPTS)
+				.description("the number of attempts per call")
+				.tag("name", name)
+				.register(meterRegistry);
+		this.backoff = Timer.builder(BACKOFF)
+				.description("the time waited between the attempts of a retried call")
+				.tag("name", name)
+				.register(meterRegistry);
+		this.addedLatency = Timer.builder(ADDED_LATENCY)
+				.description("the latency the retries added on top of the first attempt")
+				.tag("name", name)
+				.publishPercentiles(0.5, 0.95, 0.99)
+				.register(meterRegistry);
+		if (retryBudget != null) {
+			Gauge.builder(BUDGET_AVAILABLE, retryBudget, RetryBudget::getAvailableRetries)
+					.description("the number of retries the retry budget allows")
+					.tag("name", name)
+					.register(meterRegistry);
+			FunctionCounter.builder(BUDGET_REJECTED, retryBudget, RetryBudget::getRejectedRetryCount)
+					.description("the number of retryable failures not retried as the retry budget was spent")
+					.tag("name", name)
+					.register(meterRegistry);
+		}
+	}
+
+	private static Counter calls(String name, String kind, MeterRegistry meterRegistry) {
+		return Counter.builder(CALLS)
+				.description("the number of calls by kind")
+				.tag("name", name)
+				.tag("kind", kind)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * @return the recorder of a new call , to be told about each attempt and the call outcome
+	 */
+	Call startCall() {
+		return new Call();
+	}
+
+	/**
+	 * the attempts of one call , they run one after the other so there is no need to synchronize even when they run on different threads
+	 */
+	final class Call {
+		private final long startNanos = System.nanoTime();
+		private int attemptCount;
+		private long attemptsNanos;
+		private long firstAttemptNanos;
+
+		/**
+		 * @return the attempt start time to give back to {@link #attemptEnded(long)}
+		 */
+		long attemptStarted() {
+			attemptCount++;
+			if (retryBudget != null) {
+				if (attemptCount == 1) {
+					retryBudget.recordCall();
+				} else {
+					retryBudget.recordRetry();
+				}
+			}
+			return System.nanoTime();
+		}
+
+		void attemptEnded(long attemptStartNanos) {
+			long attemptNanos = System.nanoTime() - attemptStartNanos;
+			if (attemptCount == 1) {
+				firstAttemptNanos = attemptNanos;
+			}
+			attemptsNanos += attemptNanos;
+		}
+
+		/**
+		 * @param result  the call result , null when it failed
+		 * @param failure the call failure , null when it was successful
+		 */
+		void ended(Object result, Throwable failure) {
+			long callNanos = System.nanoTime() - startNanos;
+			boolean successful = failure == null;
+			boolean retried = attemptCount > 1;
+			if (successful) {
+				(retried ? successfulWithRetry : successfulWithoutRetry).increment();
+			} else {
+				(retried ? failedWithRetry : failedWithoutRetry).increment();
+			}
+			attempts.record(attemptCount);
+			if (retried) {
+				backoff.record(Math.max(0, callNanos - attemptsNanos), TimeUnit.NANOSECONDS);
+			}
+			addedLatency.record(Math.max(0, callNanos - firstAttemptNanos), TimeUnit.NANOSECONDS);
+			if (retryBudget != null && attemptCount < retryConfig.getMaxAttempts() && isRetryable(result, failure)) {
+				// attempts were left , only the budget stopped the retry
+				retryBudget.recordRejectedRetry();
+			}
+		}
+
+		private boolean isRetryable(Object result, Throwable failure) {
+			if (failure != null) {
+				return retryConfig.getExceptionPredicate().test(failure);
+			}
+			return retryConfig.getResultPredicate() != null && retryConfig.getResultPredicate().test(result);
+		}
+	}
+}
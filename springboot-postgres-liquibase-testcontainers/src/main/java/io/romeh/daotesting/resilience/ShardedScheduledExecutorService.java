@@ -0,0 +1,144 @@
+package io.romeh.daotesting.resilience;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author romeh
+ * a scheduler to share between the async retries , instead of one single thread scheduler per caller ,
+ * the timers are spread over independent single thread schedulers so the retry attempts do not run one after the other on one thread
+ * and each shard delay queue holds only its share of the pending retries ,
+ * the shard of a task is picked at random so scheduling does not write any shared state ,
+ * the cancelled timers are removed right away from their shard queue so cancelling many of them does not grow the queues
+ */
+public final class ShardedScheduledExecutorService extends AbstractExecutorService implements ScheduledExecutorService {
+
+	private final ScheduledThreadPoolExecutor[] shards;
+
+	/**
+	 * one shard per processor
+	 */
+	public ShardedScheduledExecutorService(String threadNamePrefix) {
+		this(Runtime.getRuntime().availableProcessors(), threadNamePrefix);
+	}
+
+	/**
+	 * @param shardCount       the number of single thread schedulers
+	 * @param threadNamePrefix the scheduler thread name prefix , followed by the shard index
+	 */
+	public ShardedScheduledExecutorService(int shardCount, String threadNamePrefix) {
+		if (shardCount < 1) {
+			throw new IllegalArgumentException("at least one shard is needed , got " + shardCount);
+		}
+		this.shards = new ScheduledThreadPoolExecutor[shardCount];
+		AtomicInteger threadIndex = new AtomicInteger();
+		for (int i = 0; i < shardCount; i++) {
+			ScheduledThreadPoolExecutor shard = new ScheduledThreadPoolExecutor(1, runnable -> {
+				Thread thread = new Thread(runnable, threadNamePrefix + threadIndex.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+			shard.setRemoveOnCancelPolicy(true);
+			shards[i] = shard;
+		}
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * @return the number of tasks waiting in all the shards , the pending retries
+	 */
+	public int getPendingTaskCount() {
+		int pending = 0;
+		for (ScheduledThreadPoolExecutor shard : shards) {
+			pending += shard.getQueue().size();
+		}
+		return pending;
+	}
+
+	private ScheduledThreadPoolExecutor shard() {
+		return shards.length == 1 ? shards[0] : shards[ThreadLocalRandom.current().nextInt(shards.length)];
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+		return shard().schedule(command, delay, unit);
+	}
+
+	@Override
+	public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+		return shard().schedule(callable, delay, unit);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+		return shard().scheduleAtFixedRate(command, initialDelay, period, unit);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+		return shard().scheduleWithFixedDelay(command, initialDelay, delay, unit);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		shard().execute(command);
+	}
+
+	@Override
+	public void shutdown() {
+		for (ScheduledThreadPoolExecutor shard : shards) {
+			shard.shutdown();
+		}
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		List<Runnable> neverRun = new ArrayList<>();
+		for (ScheduledThreadPoolExecutor shard : shards) {
+			neverRun.addAll(shard.shutdownNow());
+		}
+		return neverRun;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		for (ScheduledThreadPoolExecutor shard : shards) {
+			if (!shard.isShutdown()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		for (ScheduledThreadPoolExecutor shard : shards) {
+			if (!shard.isTerminated()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (ScheduledThreadPoolExecutor shard : shards) {
+			if (!shard.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,79 @@
+package io.romeh.daotesting.rest;
+
+import java.util.concurrent.CompletableFuture;
+
+import javax.validation.Valid;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import io.romeh.daotesting.rest.dto.CustomerDto;
+import io.romeh.daotesting.rest.dto.CustomerMapper;
+import io.romeh.daotesting.rest.dto.ErrorResponse;
+import io.romeh.daotesting.service.AsyncCustomerService;
+
+/**
+ * the async variant of the customer rest api , the servlet thread is released while the db work runs on the customer db executor
+ */
+@org.springframework.web.bind.annotation.RestController
+@RequestMapping(value = "/async/customers", produces = MediaType.APPLICATION_JSON_VALUE)
+public class AsyncRestAPI {
+
+	private final AsyncCustomerService asyncCustomerService;
+	private final CustomerMapper customerMapper;
+
+	@Autowired
+	public AsyncRestAPI(AsyncCustomerService asyncCustomerService, CustomerMapper customerMapper) {
+		this.asyncCustomerService = asyncCustomerService;
+		this.customerMapper = customerMapper;
+	}
+
+	@GetMapping(value = "/{id}")
+	public CompletableFuture<ResponseEntity<CustomerDto>> getCustomerById(@PathVariable long id) {
+		return asyncCustomerService.findCustomerById(id).thenApply(customer -> ResponseEntity.of(customer.map(customerMapper::mapCustomerToDto)));
+	}
+
+	@GetMapping(value = "/names/{name}")
+	public CompletableFuture<ResponseEntity<CustomerDto>> getCustomerByName(@PathVariable String name) {
+		return asyncCustomerService.findCustomerByName(name).thenApply(customer -> ResponseEntity.of(customer.map(customerMapper::mapCustomerToDto)));
+	}
+
+	@PostMapping
+	public CompletableFuture<Void> createCustomer(@Valid @RequestBody CustomerDto customerDto) {
+		return asyncCustomerService.createCustomer(customerMapper.mapDtoToCustomer(customerDto));
+	}
+
+	@ExceptionHandler
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	public ErrorResponse handleException(MethodArgumentNotValidException exception) {
+
+		String errorMsg = exception.getBindingResult().getFieldErrors().stream()
+				.map(DefaultMessageSourceResolvable::getDefaultMessage)
+				.findFirst()
+				.orElse(exception.getMessage());
+
+		return ErrorResponse.builder().message(errorMsg).build();
+	}
+
+	/**
+	 * the customer db executor queue is full
+	 */
+	@ExceptionHandler
+	@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+	public ErrorResponse handleRejection(TaskRejectedException exception) {
+
+		return ErrorResponse.builder().message("too many pending customer requests").build();
+	}
+}
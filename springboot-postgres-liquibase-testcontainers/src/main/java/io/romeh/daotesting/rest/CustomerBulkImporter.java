@@ -0,0 +1,147 @@
+package io.romeh.daotesting.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.dto.BulkCreateResponse;
+import io.romeh.daotesting.rest.dto.CustomerDto;
+import io.romeh.daotesting.rest.dto.CustomerMapper;
+import io.romeh.daotesting.service.CustomerService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author romeh
+ * streams a JSON array or a NDJSON body of customers , every row is validated and the valid ones are saved in batches ,
+ * a failing batch is replayed row by row to find out which rows can not be saved
+ */
+@Component
+@Slf4j
+public class CustomerBulkImporter {
+
+	private final CustomerService customerService;
+	private final CustomerMapper customerMapper;
+	private final Validator validator;
+	private final ObjectReader customerReader;
+	private final int batchSize;
+	private final int maxReportedErrors;
+
+	/**
+	 * @param batchSize         the number of rows saved per transaction
+	 * @param maxReportedErrors the maximum number of row errors returned to the caller , the failed rows are still all counted
+	 */
+	@Autowired
+	public CustomerBulkImporter(CustomerService customerService, CustomerMapper customerMapper, Validator validator,
+	                            ObjectMapper objectMapper,
+	                            @Value("${customers.bulk.batch-size:1000}") int batchSize,
+	                            @Value("${customers.bulk.max-reported-errors:1000}") int maxReportedErrors) {
+		this.customerService = customerService;
+		this.customerMapper = customerMapper;
+		this.validator = validator;
+		this.customerReader = objectMapper.readerFor(CustomerDto.class);
+		this.batchSize = batchSize;
+		this.maxReportedErrors = maxReportedErrors;
+	}
+
+	/**
+	 * @param body the request body , a JSON array of customers or one customer JSON document per line
+	 * @return the import result with the failed rows
+	 * @throws IOException if the body can not be read
+	 */
+	public BulkCreateResponse importCustomers(InputStream body) throws IOException {
+		final long start = System.nanoTime();
+		final ImportState state = new ImportState();
+		final List<Customer> batch = new ArrayList<>(batchSize);
+		final long[] batchIndexes = new long[batchSize];
+
+		try (MappingIterator<CustomerDto> rows = customerReader.readValues(body)) {
+			while (rows.hasNextValue()) {
+				final long index = state.received;
+				final CustomerDto customerDto = rows.nextValue();
+				state.received++;
+				final Set<ConstraintViolation<CustomerDto>> violations = validator.validate(customerDto);
+				if (!violations.isEmpty()) {
+					state.fail(index, violations.stream()
+							.map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+							.collect(Collectors.joining(", ")));
+					continue;
+				}
+				batchIndexes[batch.size()] = index;
+				batch.add(customerMapper.mapDtoToCustomer(customerDto));
+				if (batch.size() == batchSize) {
+					persist(batch, batchIndexes, state);
+				}
+			}
+		} catch (JsonProcessingException e) {
+			// the stream can not be resumed after a malformed row , the rows read so far are still saved
+			state.fail(state.received++, e.getOriginalMessage());
+		}
+		persist(batch, batchIndexes, state);
+
+		final long elapsedNanos = System.nanoTime() - start;
+		final double rowsPerSecond = state.created / Math.max(elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1), 1e-9);
+		log.info("bulk import of {} customers done in {} ms , {} created , {} failed , {} rows/s", state.received,
+				TimeUnit.NANOSECONDS.toMillis(elapsedNanos), state.created, state.failed, (long) rowsPerSecond);
+
+		return BulkCreateResponse.builder()
+				.received(state.received)
+				.created(state.created)
+				.failed(state.failed)
+				.elapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+				.rowsPerSecond(rowsPerSecond)
+				.errors(state.errors)
+				.build();
+	}
+
+	private void persist(List<Customer> batch, long[] batchIndexes, ImportState state) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		try {
+			customerService.createCustomers(batch);
+			state.created += batch.size();
+		} catch (RuntimeException batchFailure) {
+			for (int i = 0; i < batch.size(); i++) {
+				try {
+					customerService.createCustomer(batch.get(i));
+					state.created++;
+				} catch (RuntimeException rowFailure) {
+					state.fail(batchIndexes[i], NestedExceptionUtils.getMostSpecificCause(rowFailure).getMessage());
+				}
+			}
+		}
+		batch.clear();
+	}
+
+	private final class ImportState {
+		private final List<BulkCreateResponse.RowError> errors = new ArrayList<>();
+		private long received;
+		private long created;
+		private long failed;
+
+		private void fail(long index, String message) {
+			failed++;
+			if (errors.size() < maxReportedErrors) {
+				errors.add(BulkCreateResponse.RowError.builder().index(index).message(message).build());
+			}
+		}
+	}
+}
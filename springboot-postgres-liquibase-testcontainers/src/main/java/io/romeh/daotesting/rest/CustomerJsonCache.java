@@ -0,0 +1,88 @@
+package io.romeh.daotesting.rest;
+
+import static io.romeh.daotesting.config.CacheConfig.CUSTOMERS_BY_ID;
+import static io.romeh.daotesting.config.CacheConfig.CUSTOMER_JSON_BY_ID;
+
+import java.util.Optional;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.dto.CustomerDto;
+import io.romeh.daotesting.rest.dto.CustomerMapper;
+import io.romeh.daotesting.service.CustomerService;
+import lombok.Value;
+
+/**
+ * @author romeh
+ * the json of the customers by id , serialized once and cached as bytes with the customer version , so a hot customer is written
+ * to the response as it is , without being mapped nor serialized again , and its ETag is known without reading it ,
+ * the version of an uncached customer is read alone , so a conditional GET answered 304 never serializes it ,
+ * the entries are evicted by the customer saves together with the customersById ones
+ */
+@Component
+public class CustomerJsonCache {
+
+	/**
+	 * the serialized json of a customer at a version
+	 */
+	@Value
+	public static class CustomerJson {
+		long version;
+		byte[] json;
+	}
+
+	private final CustomerService customerService;
+	private final CustomerMapper customerMapper;
+	private final ObjectWriter customerWriter;
+	private final CacheManager cacheManager;
+
+	/**
+	 * @param cacheManager the manager of the customer caches , to find the cached versions without filling the caches
+	 */
+	public CustomerJsonCache(CustomerService customerService, CustomerMapper customerMapper, ObjectMapper objectMapper,
+	                         @Nullable CacheManager cacheManager) {
+		this.customerService = customerService;
+		this.customerMapper = customerMapper;
+		this.customerWriter = objectMapper.writerFor(CustomerDto.class);
+		this.cacheManager = cacheManager;
+	}
+
+	/**
+	 * @return the json of the customer , null if there is no such customer , the misses are not cached
+	 */
+	@Nullable
+	@Cacheable(cacheNames = CUSTOMER_JSON_BY_ID, key = "#id", unless = "#result == null")
+	public CustomerJson findCustomerJsonById(long id) throws JsonProcessingException {
+		Optional<Customer> customer = customerService.findCustomerById(id);
+		return customer.isPresent()
+				? new CustomerJson(customer.get().getVersion(), customerWriter.writeValueAsBytes(customerMapper.mapCustomerToDto(customer.get())))
+				: null;
+	}
+
+	/**
+	 * @return the version of the cached json or customer , else the current version read alone , empty if there is no such customer
+	 */
+	public Optional<Long> findCustomerVersionById(long id) {
+		Cache customerJsonById = cacheManager != null ? cacheManager.getCache(CUSTOMER_JSON_BY_ID) : null;
+		CustomerJson customerJson = customerJsonById != null ? customerJsonById.get(id, CustomerJson.class) : null;
+		if (customerJson != null) {
+			return Optional.of(customerJson.getVersion());
+		}
+		Cache customersById = cacheManager != null ? cacheManager.getCache(CUSTOMERS_BY_ID) : null;
+		// the cache keeps the customer of the optional
+		Customer customer = customersById != null ? customersById.get(id, Customer.class) : null;
+		if (customer != null) {
+			return Optional.of(customer.getVersion());
+		}
+		return customerService.findCustomerVersionById(id);
+	}
+}
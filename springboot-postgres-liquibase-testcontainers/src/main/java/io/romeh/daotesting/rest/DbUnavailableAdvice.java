@@ -0,0 +1,28 @@
+package io.romeh.daotesting.rest;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerOpenException;
+import io.romeh.daotesting.rest.dto.ErrorResponse;
+
+/**
+ * @author romeh
+ * the 503 of both the sync and the async customer apis when the customer db circuit breaker or bulkhead rejects a call
+ */
+@RestControllerAdvice(assignableTypes = {RestAPI.class, AsyncRestAPI.class})
+public class DbUnavailableAdvice {
+
+	/**
+	 * the customer db circuit breaker is open or its bulkhead is full , and there was no last known good result to serve
+	 */
+	@ExceptionHandler({CircuitBreakerOpenException.class, BulkheadFullException.class})
+	@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+	public ErrorResponse handleDbUnavailable(RuntimeException exception) {
+
+		return ErrorResponse.builder().message("the customer db is unavailable , retry later").build();
+	}
+}
@@ -1,24 +1,57 @@
 package io.romeh.daotesting.rest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.CustomerJsonCache.CustomerJson;
+import io.romeh.daotesting.rest.dto.BatchGetRequest;
+import io.romeh.daotesting.rest.dto.BatchGetResponse;
+import io.romeh.daotesting.rest.dto.BulkCreateResponse;
 import io.romeh.daotesting.rest.dto.CustomerDto;
 import io.romeh.daotesting.rest.dto.CustomerMapper;
+import io.romeh.daotesting.rest.dto.CustomerPage;
 import io.romeh.daotesting.rest.dto.ErrorResponse;
 import io.romeh.daotesting.service.CustomerService;
+import io.swagger.annotations.ApiOperation;
 
 /**
  * the main rest api for customer CRUD
@@ -27,24 +60,140 @@ import io.romeh.daotesting.service.CustomerService;
 @RequestMapping(value = "/customers", produces = MediaType.APPLICATION_JSON_VALUE)
 public class RestAPI {
 
+	public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
 	private final CustomerService customerService;
 	private final CustomerMapper customerMapper;
+	private final CustomerBulkImporter customerBulkImporter;
+	private final CustomerJsonCache customerJsonCache;
+	private final ObjectWriter customerLinesWriter;
+	private final long exportTimeout;
 
+	/**
+	 * @param exportTimeout the async timeout in ms of the export , the other async requests keep the spring.mvc.async.request-timeout
+	 */
 	@Autowired
-	public RestAPI(CustomerService customerService, CustomerMapper customerMapper) {
+	public RestAPI(CustomerService customerService, CustomerMapper customerMapper, CustomerBulkImporter customerBulkImporter,
+	               CustomerJsonCache customerJsonCache, ObjectMapper objectMapper, @Value("${customers.export.timeout:3600000}") long exportTimeout) {
 		this.customerService = customerService;
 		this.customerMapper = customerMapper;
+		this.customerBulkImporter = customerBulkImporter;
+		this.customerJsonCache = customerJsonCache;
+		this.customerLinesWriter = objectMapper.writerFor(CustomerDto.class).withRootValueSeparator("\n");
+		this.exportTimeout = exportTimeout;
+	}
+
+	/**
+	 * @param afterId the nextAfterId of the previous page , nothing for the first page
+	 * @param limit   the page size , at most 1000
+	 * @return the page of customers ordered by id
+	 */
+	@GetMapping
+	public CustomerPage getCustomers(@RequestParam(defaultValue = "0") long afterId, @RequestParam(defaultValue = "100") int limit) {
+		List<CustomerDto> customers = customerService.findCustomersAfter(afterId, limit);
+		Long nextAfterId = customers.isEmpty() ? null : customers.get(customers.size() - 1).getId();
+		return CustomerPage.builder()
+				.customers(customers)
+				.nextAfterId(nextAfterId)
+				.build();
 	}
 
+	/**
+	 * @return all the customers as JSON lines , streamed from a db cursor so the heap usage does not depend on the table size ,
+	 * written by an async task with the customers.export.timeout , a large export outlives the async timeout of the other requests
+	 */
+	@GetMapping(value = "/export", produces = APPLICATION_NDJSON_VALUE)
+	public WebAsyncTask<Void> exportCustomers(HttpServletResponse response) {
+		return new WebAsyncTask<>(exportTimeout, () -> {
+			response.setContentType(APPLICATION_NDJSON_VALUE);
+			try (SequenceWriter lines = customerLinesWriter.writeValues(response.getOutputStream())) {
+				customerService.exportCustomers(customer -> {
+					try {
+						lines.write(customerMapper.mapCustomerToDto(customer));
+					} catch (IOException e) {
+						// the client went away , abort the db query
+						throw new UncheckedIOException(e);
+					}
+				});
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * @param ifNoneMatch the ETags the client has , the customer version is compared to them before its json is read ,
+	 *                    so a request answered 304 never serializes the customer
+	 * @return the customer json , written from the serialized bytes of the customerJsonById cache , with the customer version as ETag ,
+	 * a request with a matching If-None-Match is answered 304 without any body
+	 */
 	@GetMapping(value = "/{id}")
-	public CustomerDto getCustomerById(@PathVariable long id) {
-		return customerMapper.mapCustomerToDto(customerService.findCustomerById(id));
+	@ApiOperation(value = "get a customer by id", response = CustomerDto.class)
+	public ResponseEntity<byte[]> getCustomerById(@PathVariable long id,
+	                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+			throws JsonProcessingException {
+		if (ifNoneMatch != null) {
+			Optional<Long> version = customerJsonCache.findCustomerVersionById(id);
+			if (!version.isPresent()) {
+				return ResponseEntity.notFound().build();
+			}
+			if (matchesIfNoneMatch(ifNoneMatch, version.get())) {
+				return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag(version.get())).build();
+			}
+		}
+		CustomerJson customerJson = customerJsonCache.findCustomerJsonById(id);
+		return customerJson != null
+				? ResponseEntity.ok().eTag(eTag(customerJson.getVersion())).contentType(MediaType.APPLICATION_JSON_UTF8).body(customerJson.getJson())
+				: ResponseEntity.notFound().build();
+	}
 
+	/**
+	 * update the customer if it is still at the version of the If-Match ETag , without holding any lock in between the GET and the PUT
+	 *
+	 * @param ifMatch the ETag of the GET the update is based on , several ETags or * for any version
+	 * @return 204 with the ETag of the new version , 412 if the customer was updated since or the If-Match has no strong ETag of ours ,
+	 * 428 without If-Match
+	 */
+	@PutMapping(value = "/{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Void> updateCustomer(@PathVariable long id, @Valid @RequestBody CustomerDto customerDto,
+	                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		if (ifMatch == null) {
+			return ResponseEntity.status(HttpStatus.PRECONDITION_REQUIRED).build();
+		}
+		Customer customer = customerMapper.mapDtoToCustomer(customerDto);
+		customer.setId(id);
+		Set<Long> versions = parseIfMatch(ifMatch);
+		Optional<Long> newVersion;
+		if (versions != null && versions.size() == 1) {
+			customer.setVersion(versions.iterator().next());
+			newVersion = customerService.updateCustomer(customer);
+		} else {
+			newVersion = customerService.updateCustomerIfVersionIn(customer, versions);
+		}
+		return newVersion
+				.map(version -> ResponseEntity.noContent().eTag(eTag(version)).<Void>build())
+				.orElseGet(() -> ResponseEntity.notFound().build());
 	}
 
 	@GetMapping(value = "/names/{name}")
-	public CustomerDto getCustomerByName(@PathVariable String name) {
-		return customerMapper.mapCustomerToDto(customerService.findCustomerByName(name));
+	public ResponseEntity<CustomerDto> getCustomerByName(@PathVariable String name) {
+		return ResponseEntity.of(customerService.findCustomerByName(name).map(customerMapper::mapCustomerToDto));
+	}
+
+	/**
+	 * fetch many customers in one db round trip instead of one GET per customer
+	 *
+	 * @return the found customers by id , in the request order , and the ids which do not exist
+	 */
+	@PostMapping(value = "/batch-get", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public BatchGetResponse getCustomersByIds(@Valid @RequestBody BatchGetRequest request) {
+		Set<Long> ids = new LinkedHashSet<>(request.getIds());
+		Map<Long, Customer> found = customerService.findCustomersByIds(ids);
+		Map<Long, CustomerDto> customers = new LinkedHashMap<>();
+		ids.stream().filter(found::containsKey).forEach(id -> customers.put(id, customerMapper.mapCustomerToDto(found.get(id))));
+		return BatchGetResponse.builder()
+				.customers(customers)
+				.missingIds(ids.stream().filter(id -> !found.containsKey(id)).collect(Collectors.toList()))
+				.build();
 	}
 
 	@PostMapping
@@ -52,6 +201,16 @@ public class RestAPI {
 		customerService.createCustomer(customerMapper.mapDtoToCustomer(customerDto));
 	}
 
+	/**
+	 * @param body a JSON array of customers or a NDJSON stream with one customer per line
+	 * @return the import result with the rows which could not be created
+	 * @throws IOException if the request body can not be read
+	 */
+	@PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+	public BulkCreateResponse createCustomers(InputStream body) throws IOException {
+		return customerBulkImporter.importCustomers(body);
+	}
+
 	@ExceptionHandler
 	@ResponseStatus(HttpStatus.BAD_REQUEST)
 	public ErrorResponse handleException(MethodArgumentNotValidException exception) {
@@ -64,10 +223,61 @@ public class RestAPI {
 		return ErrorResponse.builder().message(errorMsg).build();
 	}
 
+	/**
+	 * the If-Match ETag is not the current one , the client has to GET the customer again before updating it
+	 */
 	@ExceptionHandler
-	@ResponseStatus(HttpStatus.NO_CONTENT)
-	public ErrorResponse handleException2(IllegalStateException exception) {
+	@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+	public ErrorResponse handleStaleVersion(OptimisticLockingFailureException exception) {
+
+		return ErrorResponse.builder().message(exception.getMessage()).build();
+	}
+
+	private static String eTag(long version) {
+		return "\"" + version + "\"";
+	}
+
+	/**
+	 * @return true if one of the ETags of the If-None-Match or * matches the version , a weak ETag matches as the If-None-Match
+	 * is a weak comparison
+	 */
+	private static boolean matchesIfNoneMatch(String ifNoneMatch, long version) {
+		for (String eTag : ifNoneMatch.split(",")) {
+			String candidate = eTag.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if ("*".equals(candidate) || eTag(version).equals(candidate)) {
+				return true;
+			}
+		}
+		return false;
+	}
 
-		return ErrorResponse.builder().message(exception.getLocalizedMessage()).build();
+	/**
+	 * @return the versions of the strong ETags of an If-Match , null for * which matches any version ,
+	 * a weak ETag never matches as the If-Match is a strong comparison
+	 * @throws OptimisticLockingFailureException if there is no strong ETag of ours , so nothing can match
+	 */
+	@Nullable
+	private static Set<Long> parseIfMatch(String ifMatch) {
+		if ("*".equals(ifMatch.trim())) {
+			return null;
+		}
+		Set<Long> versions = new LinkedHashSet<>();
+		for (String eTag : ifMatch.split(",")) {
+			String version = eTag.trim();
+			if (version.length() > 2 && version.startsWith("\"") && version.endsWith("\"")) {
+				try {
+					versions.add(Long.parseLong(version.substring(1, version.length() - 1)));
+				} catch (NumberFormatException e) {
+					// not one of ours , it can not match
+				}
+			}
+		}
+		if (versions.isEmpty()) {
+			throw new OptimisticLockingFailureException("the If-Match " + ifMatch + " has no strong customer ETag");
+		}
+		return versions;
 	}
 }
@@ -0,0 +1,30 @@
+package io.romeh.daotesting.rest.dto;
+
+import java.util.List;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author romeh
+ */
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@ApiModel(description = "The ids of the customers to fetch at once. ")
+public class BatchGetRequest {
+	@NotNull
+	@NotEmpty
+	@Size(max = 1000, message = "at most 1000 customers can be fetched at once")
+	@ApiModelProperty(notes = "at most 1000 ids , the duplicated ones are fetched once")
+	private List<@NotNull Long> ids;
+}
@@ -0,0 +1,25 @@
+package io.romeh.daotesting.rest.dto;
+
+import java.util.List;
+import java.util.Map;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author romeh
+ */
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@ApiModel(description = "The fetched customers by id and the ids which do not exist. ")
+public class BatchGetResponse {
+	private Map<Long, CustomerDto> customers;
+	@ApiModelProperty(notes = "the requested ids without customer , in the request order")
+	private List<Long> missingIds;
+}
@@ -0,0 +1,37 @@
+package io.romeh.daotesting.rest.dto;
+
+import java.util.List;
+
+import io.swagger.annotations.ApiModel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author romeh
+ * the result of a bulk customer creation , the rows which could not be created are reported by their index in the request
+ */
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@ApiModel(description = "The result of a bulk customer creation. ")
+public class BulkCreateResponse {
+
+	private long received;
+	private long created;
+	private long failed;
+	private long elapsedMillis;
+	private double rowsPerSecond;
+	private List<RowError> errors;
+
+	@Builder
+	@NoArgsConstructor
+	@AllArgsConstructor
+	@Data
+	public static class RowError {
+		private long index;
+		private String message;
+	}
+}
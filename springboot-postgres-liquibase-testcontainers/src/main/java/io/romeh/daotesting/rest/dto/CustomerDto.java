@@ -3,7 +3,10 @@ package io.romeh.daotesting.rest.dto;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
 import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -14,7 +17,10 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @Data
 @ApiModel(description = "All details about the customer. ")
+@JsonSerialize(using = CustomerDtoSerializer.class)
 public class CustomerDto {
+	@ApiModelProperty(readOnly = true, notes = "generated by the server , ignored on creation")
+	private long id;
 	@NotNull
 	@NotEmpty
 	private String name;
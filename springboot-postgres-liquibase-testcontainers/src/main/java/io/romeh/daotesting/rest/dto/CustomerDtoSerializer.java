@@ -0,0 +1,41 @@
+package io.romeh.daotesting.rest.dto;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * @author romeh
+ * the json serializer of the customer dtos , the fields are written one by one with their names encoded once ,
+ * instead of the reflection based bean serializer going through the property writers of every field ,
+ * the json is the one of the bean serializer : {"id":1,"name":"..","address":"..","_active":true} , the null strings as null ,
+ * a new field of the dto has to be added here as well
+ */
+public class CustomerDtoSerializer extends StdSerializer<CustomerDto> {
+
+	private static final SerializedString ID = new SerializedString("id");
+	private static final SerializedString NAME = new SerializedString("name");
+	private static final SerializedString ADDRESS = new SerializedString("address");
+	private static final SerializedString ACTIVE = new SerializedString("_active");
+
+	public CustomerDtoSerializer() {
+		super(CustomerDto.class);
+	}
+
+	@Override
+	public void serialize(CustomerDto customer, JsonGenerator generator, SerializerProvider provider) throws IOException {
+		generator.writeStartObject(customer);
+		generator.writeFieldName(ID);
+		generator.writeNumber(customer.getId());
+		generator.writeFieldName(NAME);
+		generator.writeString(customer.getName());
+		generator.writeFieldName(ADDRESS);
+		generator.writeString(customer.getAddress());
+		generator.writeFieldName(ACTIVE);
+		generator.writeBoolean(customer.is_active());
+		generator.writeEndObject();
+	}
+}
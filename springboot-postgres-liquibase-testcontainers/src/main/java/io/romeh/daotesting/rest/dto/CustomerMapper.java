@@ -1,6 +1,9 @@
 package io.romeh.daotesting.rest.dto;
 
+import java.util.List;
+
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.ReportingPolicy;
 
 import io.romeh.daotesting.domain.Customer;
@@ -13,5 +16,8 @@ public interface CustomerMapper {
 
 	CustomerDto mapCustomerToDto(Customer customer);
 
+	List<CustomerDto> mapCustomersToDtos(List<Customer> customers);
+
+	@Mapping(target = "id", ignore = true)
 	Customer mapDtoToCustomer(CustomerDto customerDto);
 }
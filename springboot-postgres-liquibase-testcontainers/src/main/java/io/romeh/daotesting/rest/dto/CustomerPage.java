@@ -0,0 +1,25 @@
+package io.romeh.daotesting.rest.dto;
+
+import java.util.List;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author romeh
+ * a page of customers ordered by id
+ */
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@ApiModel(description = "A page of customers ordered by id. ")
+public class CustomerPage {
+	private List<CustomerDto> customers;
+	@ApiModelProperty(notes = "the afterId to use to get the next page , null once there are no more customers")
+	private Long nextAfterId;
+}
@@ -1,12 +1,14 @@
 package io.romeh.daotesting.rest.dto;
 
 import lombok.Builder;
+import lombok.Getter;
 import lombok.ToString;
 
 /**
  * @author romeh
  */
 @Builder
+@Getter
 @ToString
 public class ErrorResponse {
 
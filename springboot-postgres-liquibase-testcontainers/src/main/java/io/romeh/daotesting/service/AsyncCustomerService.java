@@ -0,0 +1,43 @@
+package io.romeh.daotesting.service;
+
+import static io.romeh.daotesting.config.AsyncConfig.CUSTOMER_DB_EXECUTOR;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import io.romeh.daotesting.domain.Customer;
+
+/**
+ * the non blocking facade of the customer service , the calls run on the bounded customer db executor ,
+ * it goes through the CustomerService bean so the caching still applies
+ */
+@Service
+public class AsyncCustomerService {
+
+	private final CustomerService customerService;
+
+	@Autowired
+	public AsyncCustomerService(CustomerService customerService) {
+		this.customerService = customerService;
+	}
+
+	@Async(CUSTOMER_DB_EXECUTOR)
+	public CompletableFuture<Optional<Customer>> findCustomerById(long id) {
+		return CompletableFuture.completedFuture(customerService.findCustomerById(id));
+	}
+
+	@Async(CUSTOMER_DB_EXECUTOR)
+	public CompletableFuture<Optional<Customer>> findCustomerByName(String name) {
+		return CompletableFuture.completedFuture(customerService.findCustomerByName(name));
+	}
+
+	@Async(CUSTOMER_DB_EXECUTOR)
+	public CompletableFuture<Void> createCustomer(Customer customer) {
+		customerService.createCustomer(customer);
+		return CompletableFuture.completedFuture(null);
+	}
+}
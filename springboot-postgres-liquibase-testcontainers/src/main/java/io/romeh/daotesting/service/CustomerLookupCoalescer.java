@@ -0,0 +1,161 @@
+package io.romeh.daotesting.service;
+
+import static io.romeh.daotesting.config.ReplicaRoutingDataSource.readFromPrimary;
+
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.romeh.daotesting.dao.CustomerRepository;
+import io.romeh.daotesting.domain.Customer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author romeh
+ * merge the concurrent single customer lookups into one WHERE id = ANY(...) query ,
+ * the lookups queued while a query is running go together in the next one , so there is no added wait when the load is low
+ * and the batches get bigger as the load grows , at most max-batch-size ids per query ,
+ * a caller waits at most timeout ms for its lookup , whatever happens to the query or the dispatchers
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "customers.lookup.coalescing.enabled", havingValue = "true")
+public class CustomerLookupCoalescer implements DisposableBean {
+
+	private final CustomerRepository customerRepository;
+	private final int maxBatchSize;
+	private final long timeout;
+	private final BlockingQueue<PendingLookup> pendingLookups = new LinkedBlockingQueue<>();
+	private final ExecutorService dispatchers;
+	private volatile boolean shutdown;
+
+	/**
+	 * @param customerRepository the customer repository
+	 * @param maxBatchSize       the max number of ids per query
+	 * @param dispatcherCount    the number of threads running the batched queries , so the max number of queries at a time
+	 * @param timeout            the max wait in ms of a lookup , the time queued plus the batched query
+	 */
+	@Autowired
+	public CustomerLookupCoalescer(CustomerRepository customerRepository,
+	                               @Value("${customers.lookup.coalescing.max-batch-size:100}") int maxBatchSize,
+	                               @Value("${customers.lookup.coalescing.dispatchers:2}") int dispatcherCount,
+	                               @Value("${customers.lookup.coalescing.timeout:5000}") long timeout) {
+		this.customerRepository = customerRepository;
+		this.maxBatchSize = maxBatchSize;
+		this.timeout = timeout;
+		this.dispatchers = Executors.newFixedThreadPool(dispatcherCount, new CustomizableThreadFactory("customer-lookup-"));
+		for (int i = 0; i < dispatcherCount; i++) {
+			dispatchers.execute(this::dispatch);
+		}
+	}
+
+	/**
+	 * @return the customer , looked up together with the other ones requested at the same time
+	 * @throws QueryTimeoutException if the lookup is not done after timeout ms
+	 * @throws IllegalStateException if the lookups are shut down
+	 */
+	public Optional<Customer> findCustomerById(long id) {
+		PendingLookup lookup = new PendingLookup(id);
+		pendingLookups.add(lookup);
+		if (shutdown) {
+			// queued after the pending lookups of the shutdown were failed , no dispatcher takes it anymore
+			lookup.result.completeExceptionally(new IllegalStateException("the customer lookups are shut down"));
+		}
+		try {
+			return lookup.result.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			// rethrow the db exception itself so it is handled like a non coalesced lookup failure
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (TimeoutException e) {
+			pendingLookups.remove(lookup);
+			throw new QueryTimeoutException("the lookup of the customer " + id + " is not done after " + timeout + " ms");
+		} catch (InterruptedException e) {
+			pendingLookups.remove(lookup);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for the lookup of the customer " + id, e);
+		}
+	}
+
+	/**
+	 * @return the number of lookups waiting for a dispatcher
+	 */
+	public int getPendingLookupCount() {
+		return pendingLookups.size();
+	}
+
+	private void dispatch() {
+		while (!Thread.currentThread().isInterrupted()) {
+			List<PendingLookup> batch = new ArrayList<>();
+			try {
+				batch.add(pendingLookups.take());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			pendingLookups.drainTo(batch, maxBatchSize - 1);
+			lookup(batch);
+		}
+	}
+
+	private void lookup(List<PendingLookup> batch) {
+		try {
+			Set<Long> ids = batch.stream().map(lookup -> lookup.id).collect(toSet());
+			// the lookups fill the customer cache , so they read the primary like the ones not coalesced
+			Map<Long, Customer> customers = readFromPrimary(() -> customerRepository.findAllByIdAny(ids))
+					.stream()
+					.collect(toMap(Customer::getId, Function.identity()));
+			batch.forEach(lookup -> lookup.result.complete(Optional.ofNullable(customers.get(lookup.id))));
+		} catch (Throwable e) {
+			// whatever it is , the dispatcher goes on with the next batch and none of the callers is left waiting
+			log.warn("customer lookup of {} ids failed", batch.size(), e);
+			batch.forEach(lookup -> lookup.result.completeExceptionally(e));
+		}
+	}
+
+	@Override
+	public void destroy() {
+		shutdown = true;
+		dispatchers.shutdownNow();
+		IllegalStateException shutdown = new IllegalStateException("the customer lookups are shut down");
+		List<PendingLookup> abandoned = new ArrayList<>();
+		pendingLookups.drainTo(abandoned);
+		abandoned.forEach(lookup -> lookup.result.completeExceptionally(shutdown));
+	}
+
+	private static final class PendingLookup {
+		private final long id;
+		private final CompletableFuture<Optional<Customer>> result = new CompletableFuture<>();
+
+		private PendingLookup(long id) {
+			this.id = id;
+		}
+	}
+}
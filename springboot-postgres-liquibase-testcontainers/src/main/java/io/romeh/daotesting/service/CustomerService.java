@@ -1,10 +1,39 @@
 package io.romeh.daotesting.service;
 
+import static io.romeh.daotesting.config.CacheConfig.CUSTOMERS_BY_ID;
+import static io.romeh.daotesting.config.CacheConfig.CUSTOMERS_BY_NAME;
+import static io.romeh.daotesting.config.CacheConfig.CUSTOMER_JSON_BY_ID;
+import static io.romeh.daotesting.config.ReplicaRoutingDataSource.readFromPrimary;
+
+import static java.util.stream.Collectors.toMap;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import io.romeh.daotesting.dao.CustomerJdbcRepository;
 import io.romeh.daotesting.dao.CustomerRepository;
 import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.dto.CustomerDto;
 
 /**
  * the main customer service
@@ -13,23 +42,206 @@ import io.romeh.daotesting.domain.Customer;
 public class CustomerService {
 
 
+	public static final int MAX_BATCH_GET_SIZE = 1000;
+	private static final int MAX_PAGE_SIZE = 1000;
+
 	private final CustomerRepository customerRepository;
+	private final CustomerJdbcRepository customerJdbcRepository;
+	private final boolean caseInsensitiveNames;
+	private final CustomerLookupCoalescer customerLookupCoalescer;
+	private final CacheManager cacheManager;
+	private final SingleFlight<Long, Optional<Customer>> lookupsById;
+	private final SingleFlight<String, Optional<Customer>> lookupsByName;
 
+	/**
+	 * @param customerRepository      the customer repository
+	 * @param customerJdbcRepository  the jdbc customer repository used for the streaming export
+	 * @param caseInsensitiveNames    if true the name lookups ignore the case , they are then served by the upper(name) index
+	 * @param lookupTimeout           the max wait in ms of a lookup for the running db lookup of the same customer
+	 * @param customerLookupCoalescer if there , the lookups by id which miss the cache are merged into batched queries
+	 * @param cacheManager            the manager of the customer caches , for the evictions which do not fit an annotation
+	 */
 	@Autowired
-	public CustomerService(CustomerRepository customerRepository) {
+	public CustomerService(CustomerRepository customerRepository, CustomerJdbcRepository customerJdbcRepository,
+	                       @Value("${customers.lookup.case-insensitive:false}") boolean caseInsensitiveNames,
+	                       @Value("${customers.lookup.single-flight.timeout:5000}") long lookupTimeout,
+	                       @Nullable CustomerLookupCoalescer customerLookupCoalescer, @Nullable CacheManager cacheManager) {
 
 		this.customerRepository = customerRepository;
+		this.customerJdbcRepository = customerJdbcRepository;
+		this.caseInsensitiveNames = caseInsensitiveNames;
+		this.lookupsById = new SingleFlight<>(lookupTimeout);
+		this.lookupsByName = new SingleFlight<>(lookupTimeout);
+		this.customerLookupCoalescer = customerLookupCoalescer;
+		this.cacheManager = cacheManager;
+	}
+
+	/**
+	 * a missing customer is an expected outcome , not an error , so it is an empty optional and no exception is built ,
+	 * the misses are not cached ,
+	 * the concurrent lookups of an id missing the cache share one db lookup , so an expired popular customer is read once ,
+	 * the lookup fills the cache so it reads the primary , a replica row can be older than the write which evicted the cache
+	 */
+	@Cacheable(cacheNames = CUSTOMERS_BY_ID, key = "#id", unless = "#result == null")
+	public Optional<Customer> findCustomerById(long id) {
+		return lookupsById.execute(id, () -> customerLookupCoalescer != null
+				? customerLookupCoalescer.findCustomerById(id) : readFromPrimary(() -> customerRepository.findById(id)));
+	}
+
+	/**
+	 * the version is not cached , it is read from the primary like the lookups filling the caches ,
+	 * so it is never older than the cached customers
+	 *
+	 * @return the current version of the customer , empty if there is no such customer
+	 */
+	public Optional<Long> findCustomerVersionById(long id) {
+		return readFromPrimary(() -> customerRepository.findVersionById(id));
+	}
+
+	/**
+	 * @param ids the customer ids , at most 1000
+	 * @return the found customers by id , the missing ids are not in the map
+	 */
+	public Map<Long, Customer> findCustomersByIds(Collection<Long> ids) {
+		if (ids.size() > MAX_BATCH_GET_SIZE) {
+			throw new IllegalArgumentException("at most " + MAX_BATCH_GET_SIZE + " customers can be fetched at once");
+		}
+		return customerRepository.findAllByIdAny(ids).stream().collect(toMap(Customer::getId, Function.identity()));
 	}
 
-	public Customer findCustomerById(long id) {
-		return customerRepository.findById(id).orElseThrow(() -> new IllegalStateException("the customer is not there"));
+	/**
+	 * the concurrent lookups of a name missing the cache share one db lookup on the primary like the lookups by id
+	 */
+	@Cacheable(cacheNames = CUSTOMERS_BY_NAME, key = "#name", unless = "#result == null")
+	public Optional<Customer> findCustomerByName(String name) {
+		return lookupsByName.execute(name, () -> readFromPrimary(() ->
+				caseInsensitiveNames ? customerRepository.findCustomerByNameIgnoreCase(name) : customerRepository.findCustomerByName(name)));
 	}
 
-	public Customer findCustomerByName(String name) {
-		return customerRepository.findCustomerByName(name).orElseThrow(() -> new IllegalStateException("the customer is not there"));
+	/**
+	 * the pages are not cached , so they are read straight into the dtos instead of up to 1000 managed entities copied by the mapper
+	 *
+	 * @param afterId the last id of the previous page , 0 for the first page
+	 * @param limit   the page size , capped to 1000
+	 * @return the customers with an id greater than afterId ordered by id
+	 */
+	public List<CustomerDto> findCustomersAfter(long afterId, int limit) {
+		return customerRepository.findDtosAfter(afterId, PageRequest.of(0, Math.min(Math.max(limit, 1), MAX_PAGE_SIZE)));
 	}
 
+	/**
+	 * @param consumer the consumer of every customer ordered by id , called while the db cursor is open
+	 */
+	public void exportCustomers(Consumer<Customer> consumer) {
+		customerJdbcRepository.streamAllCustomers(consumer);
+	}
+
+	/**
+	 * the name cache is fully cleared as the saved record can have been renamed , so its old name entry has to go as well ,
+	 * the caches are evicted once the save committed
+	 */
+	@Caching(evict = {
+			@CacheEvict(cacheNames = CUSTOMERS_BY_ID, key = "#customer.id"),
+			@CacheEvict(cacheNames = CUSTOMER_JSON_BY_ID, key = "#customer.id"),
+			@CacheEvict(cacheNames = CUSTOMERS_BY_NAME, allEntries = true)
+	})
 	public void createCustomer(Customer customer) {
 		customerRepository.save(customer);
+		forgetRunningLookups(customer.getId());
+	}
+
+	/**
+	 * the caches are evicted once the update committed , a lookup of the customer reading the old row meanwhile does not cache it ,
+	 * see {@link io.romeh.daotesting.config.AfterCommitEvictingCache}
+	 *
+	 * @param customer the new state of the customer , at the version it was read at
+	 * @return the new version of the customer , empty if there is no such customer
+	 * @throws OptimisticLockingFailureException if the customer was updated by someone else since it was read
+	 */
+	@Transactional
+	@Caching(evict = {
+			@CacheEvict(cacheNames = CUSTOMERS_BY_ID, key = "#customer.id"),
+			@CacheEvict(cacheNames = CUSTOMER_JSON_BY_ID, key = "#customer.id"),
+			@CacheEvict(cacheNames = CUSTOMERS_BY_NAME, allEntries = true)
+	})
+	public Optional<Long> updateCustomer(Customer customer) {
+		if (customerRepository.updateIfVersion(customer.getId(), customer.getVersion(), customer.getName(), customer.getAddress(),
+				customer.is_active()) == 1) {
+			forgetRunningLookups(customer.getId());
+			return Optional.of(customer.getVersion() + 1);
+		}
+		if (!customerRepository.existsById(customer.getId())) {
+			return Optional.empty();
+		}
+		throw new OptimisticLockingFailureException("the customer " + customer.getId() + " is not at the version " + customer.getVersion()
+				+ " anymore");
+	}
+
+	/**
+	 * the update of an If-Match with several ETags or * , the customer row is locked while its version is compared ,
+	 * so it is still at that version when it is updated
+	 *
+	 * @param customer the new state of the customer
+	 * @param versions the versions the update can be based on , null for any version of an existing customer
+	 * @return the new version of the customer , empty if there is no such customer
+	 * @throws OptimisticLockingFailureException if the customer is at none of the versions
+	 */
+	@Transactional
+	@Caching(evict = {
+			@CacheEvict(cacheNames = CUSTOMERS_BY_ID, key = "#customer.id"),
+			@CacheEvict(cacheNames = CUSTOMER_JSON_BY_ID, key = "#customer.id"),
+			@CacheEvict(cacheNames = CUSTOMERS_BY_NAME, allEntries = true)
+	})
+	public Optional<Long> updateCustomerIfVersionIn(Customer customer, @Nullable Set<Long> versions) {
+		Optional<Long> version = customerRepository.findVersionForUpdate(customer.getId());
+		if (!version.isPresent()) {
+			return Optional.empty();
+		}
+		if (versions != null && !versions.contains(version.get())) {
+			throw new OptimisticLockingFailureException("the customer " + customer.getId() + " is at none of the versions " + versions);
+		}
+		customer.setVersion(version.get());
+		return updateCustomer(customer);
+	}
+
+	/**
+	 * save all the customers in one transaction , the inserts are sent to the db in jdbc batches of hibernate.jdbc.batch_size ,
+	 * the customers get new ids from the sequence so they can not be in the by id caches yet , only the cached name lookups
+	 * of their names are evicted , the other cached customers stay
+	 */
+	@Transactional
+	public void createCustomers(List<Customer> customers) {
+		customerRepository.saveAll(customers);
+		Cache customersByName = cacheManager != null ? cacheManager.getCache(CUSTOMERS_BY_NAME) : null;
+		if (customersByName == null) {
+			return;
+		}
+		if (caseInsensitiveNames) {
+			// the entries are keyed by the spelling of the lookups , any case of the saved names
+			customersByName.clear();
+		} else {
+			customers.forEach(customer -> customersByName.evict(customer.getName()));
+		}
+	}
+
+	/**
+	 * the db lookups of the customer running when the save commits may have read the old row , the next lookups do not wait for them
+	 */
+	private void forgetRunningLookups(long id) {
+		Runnable forget = () -> {
+			lookupsById.forget(id);
+			// the customer may have been renamed
+			lookupsByName.forgetAll();
+		};
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					forget.run();
+				}
+			});
+		} else {
+			forget.run();
+		}
 	}
 }
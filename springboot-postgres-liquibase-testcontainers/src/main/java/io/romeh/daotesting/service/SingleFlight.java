@@ -0,0 +1,112 @@
+package io.romeh.daotesting.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.dao.QueryTimeoutException;
+
+/**
+ * @author romeh
+ * run at most one call per key at a time , the callers asking for a key while its call is running wait for that call
+ * and share its result or its failure instead of running their own ,
+ * nothing is kept once the call is over , the next caller of the key runs a new call ,
+ * a waiting caller gives up after timeout ms so a stuck call does not hold all the callers of its key
+ *
+ * @param <K> the key type
+ * @param <V> the result type
+ */
+public final class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+	private final AtomicInteger followerCount = new AtomicInteger();
+	private final long timeout;
+
+	/**
+	 * @param timeout the max wait in ms of a caller for the running call of its key
+	 */
+	public SingleFlight(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param key  the key of the call , callers with an equal key share the running call
+	 * @param call the call , run on the caller thread when there is no running call for the key
+	 * @return the result of the running call for the key
+	 * @throws QueryTimeoutException if the running call of the key is not done after timeout ms
+	 */
+	public V execute(K key, Supplier<V> call) {
+		CompletableFuture<V> flight = new CompletableFuture<>();
+		CompletableFuture<V> runningFlight = flights.putIfAbsent(key, flight);
+		if (runningFlight != null) {
+			return join(key, runningFlight);
+		}
+		try {
+			V result = call.get();
+			flight.complete(result);
+			return result;
+		} catch (RuntimeException | Error e) {
+			flight.completeExceptionally(e);
+			throw e;
+		} finally {
+			flights.remove(key, flight);
+		}
+	}
+
+	/**
+	 * let the next callers of the key run a new call instead of waiting for the running one , whose result is known to be stale ,
+	 * the callers already waiting still get it
+	 */
+	public void forget(K key) {
+		flights.remove(key);
+	}
+
+	/**
+	 * {@link #forget} all the keys
+	 */
+	public void forgetAll() {
+		flights.clear();
+	}
+
+	/**
+	 * @return the number of keys with a running call
+	 */
+	public int getFlightCount() {
+		return flights.size();
+	}
+
+	/**
+	 * @return the number of callers waiting for the running call of their key
+	 */
+	public int getFollowerCount() {
+		return followerCount.get();
+	}
+
+	private V join(K key, CompletableFuture<V> flight) {
+		followerCount.incrementAndGet();
+		try {
+			return flight.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			// rethrow the failure of the call itself so it is handled like a failure of an own call
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (TimeoutException e) {
+			throw new QueryTimeoutException("the running call of the key " + key + " is not done after " + timeout + " ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for the running call of the key " + key, e);
+		} finally {
+			followerCount.decrementAndGet();
+		}
+	}
+}
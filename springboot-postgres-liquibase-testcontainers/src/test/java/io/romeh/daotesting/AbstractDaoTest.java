@@ -0,0 +1,23 @@
+package io.romeh.daotesting;
+
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * @author romeh
+ * the base of the dao test classes , they all share one spring test context , so the shared postgres container is migrated
+ * and loaded with dao/TestData.sql once per jvm , every test runs in a transaction rolled back at its end ,
+ * so a test sees the test data and nothing written by the other tests ,
+ * the test classes running in parallel threads (the parallel-tests maven profile) each get their own database
+ * cloned from the migrated one ,
+ * the test classes must not add their own context configuration or they get their own context and a new db connection pool
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {DbConfig.class})
+@ActiveProfiles("DaoTest")
+@Transactional
+public abstract class AbstractDaoTest {
+}
@@ -0,0 +1,116 @@
+package io.romeh.daotesting;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.client.RestTemplate;
+
+import io.romeh.daotesting.config.AsyncConfig;
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.AsyncRestAPI;
+import io.romeh.daotesting.rest.CustomerBulkImporter;
+import io.romeh.daotesting.rest.CustomerJsonCache;
+import io.romeh.daotesting.rest.RestAPI;
+import io.romeh.daotesting.rest.dto.CustomerMapperImpl;
+import io.romeh.daotesting.service.AsyncCustomerService;
+import io.romeh.daotesting.service.CustomerService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * load test of the sync and async customer apis with the same small number of servlet threads and a slow db ,
+ * the sync api can only serve as many requests at a time as it has servlet threads
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AsyncRestAPILoadTest.WebOnlyApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = {"server.tomcat.max-threads=4", "customers.async.pool-size=64"})
+public class AsyncRestAPILoadTest {
+
+	private static final long DB_LATENCY_MILLIS = 200;
+	private static final int CONCURRENT_REQUESTS = 32;
+
+	@MockBean
+	private CustomerService customerService;
+	@MockBean
+	private CustomerBulkImporter customerBulkImporter;
+	@LocalServerPort
+	private int port;
+
+	@Before
+	public void slowDb() {
+		given(customerService.findCustomerById(anyLong())).willAnswer(invocation -> {
+			Thread.sleep(DB_LATENCY_MILLIS);
+			return Optional.of(Customer.builder().id(invocation.getArgument(0)).name("slow").address("db").build());
+		});
+	}
+
+	@Test
+	public void asyncApiShouldServeMoreConcurrentRequestsWithTheSameServletThreads() throws Exception {
+		// warm up both of them first
+		load("/customers/");
+		load("/async/customers/");
+
+		long syncMillis = load("/customers/");
+		long asyncMillis = load("/async/customers/");
+		log.info("{} concurrent requests with 4 servlet threads , sync: {} ms , async: {} ms", CONCURRENT_REQUESTS, syncMillis, asyncMillis);
+
+		Assert.assertTrue(asyncMillis * 2 < syncMillis);
+	}
+
+	/**
+	 * @return the time to get all the concurrent requests answered
+	 */
+	private long load(String path) throws Exception {
+		RestTemplate restTemplate = new RestTemplate();
+		ExecutorService clients = Executors.newFixedThreadPool(CONCURRENT_REQUESTS);
+		try {
+			List<Future<ResponseEntity<String>>> responses = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+				String url = "http://localhost:" + port + path + i;
+				responses.add(clients.submit(() -> restTemplate.getForEntity(url, String.class)));
+			}
+			for (Future<ResponseEntity<String>> response : responses) {
+				Assert.assertEquals(200, response.get().getStatusCodeValue());
+			}
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		} finally {
+			clients.shutdownNow();
+		}
+	}
+
+	/**
+	 * a plain configuration and not a @SpringBootConfiguration , so the other spring boot tests do not find it as their application
+	 */
+	@Configuration
+	@EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class, DataSourceTransactionManagerAutoConfiguration.class,
+			HibernateJpaAutoConfiguration.class, LiquibaseAutoConfiguration.class})
+	@Import({RestAPI.class, AsyncRestAPI.class, AsyncCustomerService.class, AsyncConfig.class, CustomerMapperImpl.class,
+			CustomerJsonCache.class})
+	static class WebOnlyApplication {
+	}
+}
@@ -0,0 +1,36 @@
+package io.romeh.daotesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.Assert;
+
+/**
+ * @author romeh
+ * keep the sql statements hibernate prepares on the test thread , so the tests can explain the statements the repositories
+ * actually send instead of hand written ones , registered as the hibernate statement inspector of the dao test configuration
+ */
+public class CapturingStatementInspector implements StatementInspector {
+
+	private static final ThreadLocal<List<String>> STATEMENTS = ThreadLocal.withInitial(ArrayList::new);
+
+	@Override
+	public String inspect(String sql) {
+		STATEMENTS.get().add(sql);
+		return sql;
+	}
+
+	/**
+	 * @param call the repository call , it must send exactly one statement
+	 * @return the sql of the statement sent by the call , with its ? parameters
+	 */
+	public static String statementOf(Supplier<?> call) {
+		List<String> statements = STATEMENTS.get();
+		statements.clear();
+		call.get();
+		Assert.assertEquals(statements.toString(), 1, statements.size());
+		return statements.remove(0);
+	}
+}
@@ -0,0 +1,96 @@
+package io.romeh.daotesting;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.validation.Validation;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.romeh.daotesting.rest.CustomerBulkImporter;
+import io.romeh.daotesting.rest.dto.BulkCreateResponse;
+import io.romeh.daotesting.rest.dto.CustomerMapperImpl;
+import io.romeh.daotesting.service.CustomerService;
+
+/**
+ * @author romeh
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CustomerBulkImporterTest {
+
+	private static final String NDJSON = "{\"name\":\"one\",\"address\":\"Brussels\"}\n"
+			+ "{\"name\":\"\",\"address\":\"Brussels\"}\n"
+			+ "{\"name\":\"three\",\"address\":\"Ghent\"}\n";
+
+	@Mock
+	private CustomerService customerService;
+	private CustomerBulkImporter customerBulkImporter;
+
+	@Before
+	public void setUp() {
+		customerBulkImporter = new CustomerBulkImporter(customerService, new CustomerMapperImpl(),
+				Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper(), 2, 10);
+	}
+
+	@Test
+	public void shouldImportNdJsonInBatchesAndReportInvalidRows() throws IOException {
+		BulkCreateResponse response = customerBulkImporter.importCustomers(body(NDJSON));
+
+		verify(customerService, times(1)).createCustomers(anyList());
+		Assert.assertEquals(3, response.getReceived());
+		Assert.assertEquals(2, response.getCreated());
+		Assert.assertEquals(1, response.getFailed());
+		Assert.assertEquals(1, response.getErrors().get(0).getIndex());
+	}
+
+	@Test
+	public void shouldImportJsonArray() throws IOException {
+		BulkCreateResponse response = customerBulkImporter.importCustomers(body("[" + NDJSON.trim().replace("\n", ",") + "]"));
+
+		Assert.assertEquals(3, response.getReceived());
+		Assert.assertEquals(2, response.getCreated());
+		Assert.assertEquals(1, response.getErrors().get(0).getIndex());
+	}
+
+	@Test
+	public void shouldReplayAFailingBatchRowByRow() throws IOException {
+		willThrow(new DataIntegrityViolationException("batch failed")).given(customerService).createCustomers(anyList());
+		willThrow(new DataIntegrityViolationException("duplicate key")).given(customerService)
+				.createCustomer(argThat(customer -> "three".equals(customer.getName())));
+
+		BulkCreateResponse response = customerBulkImporter.importCustomers(body(NDJSON));
+
+		Assert.assertEquals(1, response.getCreated());
+		Assert.assertEquals(2, response.getFailed());
+		Assert.assertEquals(2, response.getErrors().get(1).getIndex());
+		Assert.assertEquals("duplicate key", response.getErrors().get(1).getMessage());
+	}
+
+	@Test
+	public void shouldKeepTheRowsReadBeforeAMalformedRow() throws IOException {
+		BulkCreateResponse response = customerBulkImporter.importCustomers(body(NDJSON + "{\"name\":"));
+
+		Assert.assertEquals(4, response.getReceived());
+		Assert.assertEquals(2, response.getCreated());
+		Assert.assertEquals(3, response.getErrors().get(1).getIndex());
+	}
+
+	private static ByteArrayInputStream body(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
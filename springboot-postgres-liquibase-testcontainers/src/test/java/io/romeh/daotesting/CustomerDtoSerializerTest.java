@@ -0,0 +1,46 @@
+package io.romeh.daotesting;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.romeh.daotesting.rest.dto.CustomerDto;
+
+/**
+ * @author romeh
+ * the customer dto serializer writes the json of the reflection based bean serializer
+ */
+public class CustomerDtoSerializerTest {
+
+	private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+	// the annotations are ignored , so the bean serializer is used instead of the one of @JsonSerialize
+	private final ObjectMapper beanObjectMapper = Jackson2ObjectMapperBuilder.json().build().configure(MapperFeature.USE_ANNOTATIONS, false);
+
+	@Test
+	public void shouldWriteTheJsonOfTheBeanSerializer() throws Exception {
+		CustomerDto customer = new CustomerDto(42, "Romeh \"the\" customer é", "Rue de la Loi , Brussels", true);
+
+		Assert.assertEquals(beanObjectMapper.writeValueAsString(customer), objectMapper.writeValueAsString(customer));
+		Assert.assertEquals(customer, objectMapper.readValue(objectMapper.writeValueAsBytes(customer), CustomerDto.class));
+	}
+
+	@Test
+	public void shouldWriteTheMissingFieldsAsNull() throws Exception {
+		CustomerDto customer = CustomerDto.builder().id(1).build();
+
+		Assert.assertEquals(beanObjectMapper.writeValueAsString(customer), objectMapper.writeValueAsString(customer));
+	}
+
+	@Test
+	public void shouldWriteTheCustomersOfAList() throws Exception {
+		List<CustomerDto> customers = Arrays.asList(new CustomerDto(1, "first", "Brussels", true), new CustomerDto(2, "second", "Ghent", false));
+
+		Assert.assertEquals(beanObjectMapper.writeValueAsString(customers), objectMapper.writeValueAsString(customers));
+	}
+}
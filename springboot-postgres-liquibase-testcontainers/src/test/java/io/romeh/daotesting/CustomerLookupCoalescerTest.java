@@ -0,0 +1,154 @@
+package io.romeh.daotesting;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import io.romeh.daotesting.dao.CustomerRepository;
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.service.CustomerLookupCoalescer;
+
+/**
+ * @author romeh
+ */
+public class CustomerLookupCoalescerTest {
+
+	private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+	private final ExecutorService callers = Executors.newFixedThreadPool(10);
+	private CustomerLookupCoalescer customerLookupCoalescer;
+
+	@After
+	public void tearDown() {
+		callers.shutdownNow();
+		customerLookupCoalescer.destroy();
+	}
+
+	@Test
+	public void shouldMergeTheLookupsQueuedWhileAQueryIsRunning() throws Exception {
+		CountDownLatch firstQueryStarted = new CountDownLatch(1);
+		CountDownLatch releaseFirstQuery = new CountDownLatch(1);
+		given(customerRepository.findAllByIdAny(anyCollection())).willAnswer(invocation -> {
+			if (firstQueryStarted.getCount() > 0) {
+				firstQueryStarted.countDown();
+				releaseFirstQuery.await();
+			}
+			return existingCustomers(invocation.getArgument(0));
+		});
+		customerLookupCoalescer = new CustomerLookupCoalescer(customerRepository, 100, 1, 5000);
+
+		Future<Optional<Customer>> first = callers.submit(() -> customerLookupCoalescer.findCustomerById(0));
+		Assert.assertTrue(firstQueryStarted.await(5, TimeUnit.SECONDS));
+		List<Future<Optional<Customer>>> queued = new ArrayList<>();
+		for (long id = 1; id <= 9; id++) {
+			long customerId = id;
+			queued.add(callers.submit(() -> customerLookupCoalescer.findCustomerById(customerId)));
+		}
+		// the 9 callers queued their lookups behind the running query
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (customerLookupCoalescer.getPendingLookupCount() < 9) {
+			Assert.assertTrue("the lookups were not queued", System.nanoTime() < deadline);
+			Thread.sleep(10);
+		}
+		releaseFirstQuery.countDown();
+
+		Assert.assertTrue(first.get(5, TimeUnit.SECONDS).isPresent());
+		for (int i = 0; i < queued.size(); i++) {
+			Optional<Customer> customer = queued.get(i).get(5, TimeUnit.SECONDS);
+			// the odd ids do not exist
+			Assert.assertEquals((i + 1) % 2 == 0, customer.isPresent());
+		}
+		verify(customerRepository, times(2)).findAllByIdAny(anyCollection());
+	}
+
+	@Test
+	public void shouldFailAllTheLookupsOfAFailedQuery() {
+		given(customerRepository.findAllByIdAny(anyCollection())).willThrow(new QueryTimeoutException("db too slow"));
+		customerLookupCoalescer = new CustomerLookupCoalescer(customerRepository, 100, 1, 5000);
+
+		try {
+			customerLookupCoalescer.findCustomerById(1);
+			Assert.fail("the db exception should have been rethrown");
+		} catch (QueryTimeoutException e) {
+			Assert.assertEquals("db too slow", e.getMessage());
+		}
+	}
+
+	@Test
+	public void shouldKeepOnLookingUpAfterAnErrorOfAQuery() {
+		given(customerRepository.findAllByIdAny(anyCollection()))
+				.willThrow(new NoClassDefFoundError("a broken driver class"))
+				.willAnswer(invocation -> existingCustomers(invocation.getArgument(0)));
+		customerLookupCoalescer = new CustomerLookupCoalescer(customerRepository, 100, 1, 5000);
+
+		try {
+			customerLookupCoalescer.findCustomerById(2);
+			Assert.fail("the error should have been rethrown");
+		} catch (NoClassDefFoundError e) {
+			Assert.assertEquals("a broken driver class", e.getMessage());
+		}
+		// the only dispatcher survived the error
+		Assert.assertTrue(customerLookupCoalescer.findCustomerById(2).isPresent());
+	}
+
+	@Test
+	public void shouldTimeOutTheLookupsOfAStuckQuery() {
+		CountDownLatch releaseQuery = new CountDownLatch(1);
+		given(customerRepository.findAllByIdAny(anyCollection())).willAnswer(invocation -> {
+			releaseQuery.await();
+			return existingCustomers(invocation.getArgument(0));
+		});
+		customerLookupCoalescer = new CustomerLookupCoalescer(customerRepository, 100, 1, 100);
+
+		try {
+			customerLookupCoalescer.findCustomerById(2);
+			Assert.fail("the lookup should have timed out");
+		} catch (QueryTimeoutException e) {
+			Assert.assertEquals("the lookup of the customer 2 is not done after 100 ms", e.getMessage());
+		} finally {
+			releaseQuery.countDown();
+		}
+	}
+
+	@Test
+	public void shouldFailTheLookupsAfterTheShutdown() {
+		customerLookupCoalescer = new CustomerLookupCoalescer(customerRepository, 100, 1, 5000);
+		customerLookupCoalescer.destroy();
+
+		try {
+			customerLookupCoalescer.findCustomerById(2);
+			Assert.fail("the lookup should have been rejected");
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("the customer lookups are shut down", e.getMessage());
+		}
+		verify(customerRepository, never()).findAllByIdAny(anyCollection());
+	}
+
+	/**
+	 * only the even ids exist
+	 */
+	private static List<Customer> existingCustomers(Collection<Long> ids) {
+		return ids.stream()
+				.filter(id -> id % 2 == 0)
+				.map(id -> Customer.builder().id(id).name("customer" + id).address("Brussels").build())
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,322 @@
+package io.romeh.daotesting;
+
+import static io.romeh.daotesting.config.CacheConfig.CUSTOMERS_BY_ID;
+import static io.romeh.daotesting.config.CacheConfig.CUSTOMERS_BY_NAME;
+import static io.romeh.daotesting.config.CacheConfig.CUSTOMER_JSON_BY_ID;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.romeh.daotesting.config.CacheConfig;
+import io.romeh.daotesting.dao.CustomerJdbcRepository;
+import io.romeh.daotesting.dao.CustomerRepository;
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.CustomerJsonCache;
+import io.romeh.daotesting.rest.CustomerJsonCache.CustomerJson;
+import io.romeh.daotesting.rest.dto.CustomerMapperImpl;
+import io.romeh.daotesting.service.CustomerService;
+
+/**
+ * @author romeh
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {CacheConfig.class, CustomerService.class, CustomerJsonCache.class, CustomerMapperImpl.class,
+		CustomerServiceCacheTest.CacheManagerConfig.class})
+public class CustomerServiceCacheTest {
+
+	private static final Customer CUSTOMER = Customer.builder().id(1).name("TestRomeh").address("Brussels").build();
+
+	@MockBean
+	private CustomerRepository customerRepository;
+	@MockBean
+	private CustomerJdbcRepository customerJdbcRepository;
+	@Autowired
+	private CustomerService customerService;
+	@Autowired
+	private CustomerJsonCache customerJsonCache;
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Before
+	public void clearCaches() {
+		cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+		given(customerRepository.findById(1L)).willReturn(Optional.of(CUSTOMER));
+		given(customerRepository.findCustomerByName("TestRomeh")).willReturn(Optional.of(CUSTOMER));
+	}
+
+	@Test
+	public void shouldServeRepeatedLookupsFromTheCache() {
+		long hitsBefore = stats(CUSTOMERS_BY_ID).hitCount();
+
+		Assert.assertEquals(Optional.of(CUSTOMER), customerService.findCustomerById(1));
+		Assert.assertEquals(Optional.of(CUSTOMER), customerService.findCustomerById(1));
+		Assert.assertEquals(Optional.of(CUSTOMER), customerService.findCustomerByName("TestRomeh"));
+		Assert.assertEquals(Optional.of(CUSTOMER), customerService.findCustomerByName("TestRomeh"));
+
+		verify(customerRepository, times(1)).findById(1L);
+		verify(customerRepository, times(1)).findCustomerByName("TestRomeh");
+		Assert.assertEquals(hitsBefore + 1, stats(CUSTOMERS_BY_ID).hitCount());
+	}
+
+	@Test
+	public void shouldNotCacheMissingCustomers() {
+		given(customerRepository.findById(2L)).willReturn(Optional.empty());
+
+		Assert.assertFalse(customerService.findCustomerById(2).isPresent());
+		Assert.assertFalse(customerService.findCustomerById(2).isPresent());
+
+		verify(customerRepository, times(2)).findById(2L);
+	}
+
+	@Test
+	public void shouldInvalidateBothCachesOnSave() {
+		customerService.findCustomerById(1);
+		customerService.findCustomerByName("TestRomeh");
+
+		customerService.createCustomer(Customer.builder().id(1).name("Renamed").address("Brussels").build());
+
+		customerService.findCustomerById(1);
+		customerService.findCustomerByName("TestRomeh");
+		verify(customerRepository, times(2)).findById(1L);
+		verify(customerRepository, times(2)).findCustomerByName("TestRomeh");
+	}
+
+	@Test
+	public void shouldEvictOnlyTheImportedNamesOnABulkImport() {
+		given(customerRepository.findCustomerByName("Other")).willReturn(Optional.of(CUSTOMER));
+		customerService.findCustomerById(1);
+		customerService.findCustomerByName("TestRomeh");
+		customerService.findCustomerByName("Other");
+
+		customerService.createCustomers(Collections.singletonList(Customer.builder().name("TestRomeh").address("Ghent").build()));
+
+		customerService.findCustomerById(1);
+		customerService.findCustomerByName("TestRomeh");
+		customerService.findCustomerByName("Other");
+		verify(customerRepository, times(1)).findById(1L);
+		verify(customerRepository, times(2)).findCustomerByName("TestRomeh");
+		verify(customerRepository, times(1)).findCustomerByName("Other");
+	}
+
+	@Test
+	public void shouldServeTheSerializedJsonUntilTheCustomerIsSaved() throws Exception {
+		CustomerJson json = customerJsonCache.findCustomerJsonById(1);
+
+		Assert.assertEquals("{\"id\":1,\"name\":\"TestRomeh\",\"address\":\"Brussels\",\"_active\":false}", new String(json.getJson(), "UTF-8"));
+		Assert.assertEquals(0, json.getVersion());
+		// the same bytes , not serialized again
+		Assert.assertSame(json, customerJsonCache.findCustomerJsonById(1));
+		Assert.assertNull(customerJsonCache.findCustomerJsonById(2));
+
+		customerService.createCustomer(Customer.builder().id(1).name("Renamed").address("Brussels").build());
+		given(customerRepository.findById(1L)).willReturn(Optional.of(Customer.builder().id(1).name("Renamed").address("Brussels").build()));
+
+		Assert.assertEquals("{\"id\":1,\"name\":\"Renamed\",\"address\":\"Brussels\",\"_active\":false}",
+				new String(customerJsonCache.findCustomerJsonById(1).getJson(), "UTF-8"));
+	}
+
+	@Test
+	public void shouldServeTheNewVersionAfterAnUpdate() throws Exception {
+		customerService.findCustomerById(1);
+		Assert.assertEquals(0, customerJsonCache.findCustomerJsonById(1).getVersion());
+		given(customerRepository.updateIfVersion(1, 0, "Renamed", "Brussels", false)).willReturn(1);
+
+		Assert.assertEquals(Optional.of(1L), customerService.updateCustomer(Customer.builder().id(1).name("Renamed").address("Brussels").build()));
+
+		given(customerRepository.findById(1L)).willReturn(Optional.of(Customer.builder().id(1).name("Renamed").address("Brussels").version(1).build()));
+		Assert.assertEquals(1, customerService.findCustomerById(1).get().getVersion());
+		Assert.assertEquals(1, customerJsonCache.findCustomerJsonById(1).getVersion());
+	}
+
+	@Test
+	public void shouldNotCacheTheOldRowOfALookupRunningDuringAnUpdate() throws Exception {
+		Customer renamed = Customer.builder().id(1).name("Renamed").address("Brussels").version(1).build();
+		CountDownLatch oldRowRead = new CountDownLatch(1);
+		CountDownLatch releaseOldRow = new CountDownLatch(1);
+		given(customerRepository.findById(1L)).willAnswer(invocation -> {
+			oldRowRead.countDown();
+			releaseOldRow.await();
+			return Optional.of(CUSTOMER);
+		}).willReturn(Optional.of(renamed));
+		given(customerRepository.updateIfVersion(1, 0, "Renamed", "Brussels", false)).willReturn(1);
+		ExecutorService reader = Executors.newSingleThreadExecutor();
+		try {
+			Future<Optional<Customer>> runningLookup = reader.submit(() -> customerService.findCustomerById(1));
+			Assert.assertTrue(oldRowRead.await(5, TimeUnit.SECONDS));
+
+			customerService.updateCustomer(Customer.builder().id(1).name("Renamed").address("Brussels").build());
+			// a lookup after the commit does not wait for the one reading the old row
+			Assert.assertEquals(Optional.of(renamed), customerService.findCustomerById(1));
+			releaseOldRow.countDown();
+			Assert.assertEquals(Optional.of(CUSTOMER), runningLookup.get(5, TimeUnit.SECONDS));
+		} finally {
+			releaseOldRow.countDown();
+			reader.shutdownNow();
+		}
+
+		// the old row read during the update was not cached over the new one
+		Assert.assertEquals(Optional.of(renamed), customerService.findCustomerById(1));
+		Assert.assertEquals(1, customerJsonCache.findCustomerJsonById(1).getVersion());
+		verify(customerRepository, times(2)).findById(1L);
+	}
+
+	@Test
+	public void shouldCacheALookupRunningDuringTheUpdateOfAnotherCustomer() throws Exception {
+		CountDownLatch rowRead = new CountDownLatch(1);
+		CountDownLatch releaseRow = new CountDownLatch(1);
+		given(customerRepository.findById(1L)).willAnswer(invocation -> {
+			rowRead.countDown();
+			releaseRow.await();
+			return Optional.of(CUSTOMER);
+		});
+		given(customerRepository.updateIfVersion(2, 0, "Renamed", "Brussels", false)).willReturn(1);
+		ExecutorService reader = Executors.newSingleThreadExecutor();
+		try {
+			Future<Optional<Customer>> runningLookup = reader.submit(() -> customerService.findCustomerById(1));
+			Assert.assertTrue(rowRead.await(5, TimeUnit.SECONDS));
+
+			customerService.updateCustomer(Customer.builder().id(2).name("Renamed").address("Brussels").build());
+			releaseRow.countDown();
+			Assert.assertEquals(Optional.of(CUSTOMER), runningLookup.get(5, TimeUnit.SECONDS));
+		} finally {
+			releaseRow.countDown();
+			reader.shutdownNow();
+		}
+
+		// the eviction of the customer 2 did not drop the fill of the customer 1
+		Assert.assertEquals(Optional.of(CUSTOMER), customerService.findCustomerById(1));
+		verify(customerRepository, times(1)).findById(1L);
+	}
+
+	@Test
+	public void shouldRejectTheUpdateOfAnOlderVersion() {
+		given(customerRepository.updateIfVersion(1, 0, "Renamed", "Brussels", false)).willReturn(0);
+		given(customerRepository.existsById(1L)).willReturn(true);
+
+		try {
+			customerService.updateCustomer(Customer.builder().id(1).name("Renamed").address("Brussels").build());
+			Assert.fail("the update of an older version should have been rejected");
+		} catch (OptimisticLockingFailureException e) {
+			// expected
+		}
+		Assert.assertFalse(customerService.updateCustomer(Customer.builder().id(2).name("Renamed").address("Brussels").build()).isPresent());
+	}
+
+	@Test
+	public void shouldReadTheVersionAloneUntilTheCustomerIsCached() throws Exception {
+		given(customerRepository.findVersionById(1L)).willReturn(Optional.of(0L));
+
+		Assert.assertEquals(Optional.of(0L), customerJsonCache.findCustomerVersionById(1));
+		verify(customerRepository, times(0)).findById(1L);
+		customerService.findCustomerById(1);
+		Assert.assertEquals(Optional.of(0L), customerJsonCache.findCustomerVersionById(1));
+		customerJsonCache.findCustomerJsonById(1);
+		Assert.assertEquals(Optional.of(0L), customerJsonCache.findCustomerVersionById(1));
+
+		// the cached customer and json answer the later ones
+		verify(customerRepository, times(1)).findVersionById(1L);
+		verify(customerRepository, times(1)).findById(1L);
+	}
+
+	@Test
+	public void shouldUpdateTheLockedVersionIfItIsOneOfTheGivenOnes() {
+		given(customerRepository.findVersionForUpdate(1L)).willReturn(Optional.of(3L));
+		given(customerRepository.updateIfVersion(1, 3, "Renamed", "Brussels", false)).willReturn(1);
+
+		Assert.assertEquals(Optional.of(4L), customerService.updateCustomerIfVersionIn(
+				Customer.builder().id(1).name("Renamed").address("Brussels").build(), new HashSet<>(Arrays.asList(2L, 3L))));
+		Assert.assertEquals(Optional.of(4L), customerService.updateCustomerIfVersionIn(
+				Customer.builder().id(1).name("Renamed").address("Brussels").build(), null));
+		try {
+			customerService.updateCustomerIfVersionIn(Customer.builder().id(1).name("Renamed").address("Brussels").build(),
+					new HashSet<>(Arrays.asList(1L, 2L)));
+			Assert.fail("the customer is at none of the versions");
+		} catch (OptimisticLockingFailureException e) {
+			// expected
+		}
+		verify(customerRepository, times(2)).updateIfVersion(1, 3, "Renamed", "Brussels", false);
+		Assert.assertFalse(customerService.updateCustomerIfVersionIn(Customer.builder().id(2).name("Renamed").address("Brussels").build(), null)
+				.isPresent());
+	}
+
+	private CacheStats stats(String cacheName) {
+		return ((CaffeineCache) ((TransactionAwareCacheDecorator) cacheManager.getCache(cacheName)).getTargetCache()).getNativeCache().stats();
+	}
+
+	@Configuration
+	@EnableTransactionManagement
+	static class CacheManagerConfig {
+
+		/**
+		 * no resource , only the transaction synchronizations the cache evictions wait for
+		 */
+		@Bean
+		public PlatformTransactionManager transactionManager() {
+			return new AbstractPlatformTransactionManager() {
+				@Override
+				protected Object doGetTransaction() {
+					return new Object();
+				}
+
+				@Override
+				protected void doBegin(Object transaction, TransactionDefinition definition) {
+				}
+
+				@Override
+				protected void doCommit(DefaultTransactionStatus status) {
+				}
+
+				@Override
+				protected void doRollback(DefaultTransactionStatus status) {
+				}
+			};
+		}
+
+		@Bean
+		public CacheManager cacheManager() {
+			CaffeineCacheManager cacheManager = new CaffeineCacheManager(CUSTOMERS_BY_ID, CUSTOMERS_BY_NAME, CUSTOMER_JSON_BY_ID);
+			cacheManager.setCacheSpecification("maximumSize=100,recordStats");
+			return cacheManager;
+		}
+
+		@Bean
+		public ObjectMapper objectMapper() {
+			return Jackson2ObjectMapperBuilder.json().build();
+		}
+	}
+}
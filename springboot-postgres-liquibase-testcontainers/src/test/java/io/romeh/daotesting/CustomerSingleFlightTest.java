@@ -0,0 +1,163 @@
+package io.romeh.daotesting;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.romeh.daotesting.dao.CustomerRepository;
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.service.CustomerService;
+import io.romeh.daotesting.service.SingleFlight;
+
+/**
+ * @author romeh
+ * a herd of concurrent lookups of the same customer , the db lookup is held until the whole herd is waiting on it ,
+ * and a lookup giving up on a stuck db lookup
+ */
+public class CustomerSingleFlightTest {
+
+	private static final int HERD_SIZE = 50;
+	private static final Customer CUSTOMER = Customer.builder().id(1).name("TestRomeh").address("Brussels").build();
+
+	private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+	private final CustomerService customerService = new CustomerService(customerRepository, null, false, 5000, null, null);
+	private final ExecutorService callers = Executors.newFixedThreadPool(HERD_SIZE);
+	private final CountDownLatch lookupStarted = new CountDownLatch(1);
+	private final CountDownLatch releaseLookup = new CountDownLatch(1);
+
+	@After
+	public void tearDown() {
+		releaseLookup.countDown();
+		callers.shutdownNow();
+	}
+
+	@Test
+	public void shouldRunOneDbLookupPerIdForTheWholeHerd() throws Exception {
+		given(customerRepository.findById(1L)).willAnswer(invocation -> heldLookup(Optional.of(CUSTOMER)));
+		given(customerRepository.findById(2L)).willReturn(Optional.empty());
+
+		List<Future<Optional<Customer>>> herd = herd(() -> customerService.findCustomerById(1));
+		// another id does not wait for the running lookup
+		Assert.assertFalse(customerService.findCustomerById(2).isPresent());
+		releaseLookup.countDown();
+
+		for (Future<Optional<Customer>> lookup : herd) {
+			Assert.assertEquals(Optional.of(CUSTOMER), lookup.get(5, TimeUnit.SECONDS));
+		}
+		verify(customerRepository, times(1)).findById(1L);
+
+		// the flight is over , the next lookup goes to the db again
+		customerService.findCustomerById(1);
+		verify(customerRepository, times(2)).findById(1L);
+	}
+
+	@Test
+	public void shouldRunOneDbLookupPerNameForTheWholeHerd() throws Exception {
+		given(customerRepository.findCustomerByName("TestRomeh")).willAnswer(invocation -> heldLookup(Optional.of(CUSTOMER)));
+
+		List<Future<Optional<Customer>>> herd = herd(() -> customerService.findCustomerByName("TestRomeh"));
+		releaseLookup.countDown();
+
+		for (Future<Optional<Customer>> lookup : herd) {
+			Assert.assertEquals(Optional.of(CUSTOMER), lookup.get(5, TimeUnit.SECONDS));
+		}
+		verify(customerRepository, times(1)).findCustomerByName("TestRomeh");
+	}
+
+	@Test
+	public void shouldShareTheDbFailureWithTheWholeHerd() throws Exception {
+		given(customerRepository.findById(1L)).willAnswer(invocation -> heldLookup(null));
+
+		List<Future<Optional<Customer>>> herd = herd(() -> customerService.findCustomerById(1));
+		releaseLookup.countDown();
+
+		for (Future<Optional<Customer>> lookup : herd) {
+			try {
+				lookup.get(5, TimeUnit.SECONDS);
+				Assert.fail("the db exception should have been rethrown");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof QueryTimeoutException);
+			}
+		}
+		verify(customerRepository, times(1)).findById(1L);
+	}
+
+	@Test
+	public void shouldNotWaitForAStuckDbLookupForever() throws Exception {
+		CustomerService impatientService = new CustomerService(customerRepository, null, false, 100, null, null);
+		given(customerRepository.findById(1L)).willAnswer(invocation -> heldLookup(Optional.of(CUSTOMER)));
+
+		Future<Optional<Customer>> leader = callers.submit(() -> impatientService.findCustomerById(1));
+		Assert.assertTrue(lookupStarted.await(5, TimeUnit.SECONDS));
+		try {
+			impatientService.findCustomerById(1);
+			Assert.fail("the lookup should not wait for the stuck db lookup");
+		} catch (QueryTimeoutException expected) {
+			Assert.assertEquals("the running call of the key 1 is not done after 100 ms", expected.getMessage());
+		}
+		releaseLookup.countDown();
+
+		// the stuck db lookup itself is not cut
+		Assert.assertEquals(Optional.of(CUSTOMER), leader.get(5, TimeUnit.SECONDS));
+		verify(customerRepository, times(1)).findById(1L);
+	}
+
+	/**
+	 * @return the herd lookups , once the first one started its db lookup and the other ones joined it
+	 */
+	private List<Future<Optional<Customer>>> herd(Callable<Optional<Customer>> lookup) throws InterruptedException {
+		List<Future<Optional<Customer>>> herd = new ArrayList<>();
+		herd.add(callers.submit(lookup));
+		Assert.assertTrue(lookupStarted.await(5, TimeUnit.SECONDS));
+		for (int i = 1; i < HERD_SIZE; i++) {
+			herd.add(callers.submit(lookup));
+		}
+		awaitFollowers(customerService, HERD_SIZE - 1);
+		return herd;
+	}
+
+	/**
+	 * wait for the given number of lookups to join the running db lookups of the service
+	 */
+	private static void awaitFollowers(CustomerService customerService, int followers) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (followerCount(customerService, "lookupsById") + followerCount(customerService, "lookupsByName") < followers) {
+			Assert.assertTrue("the lookups did not join the running db lookup", System.nanoTime() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static int followerCount(CustomerService customerService, String lookups) {
+		return ((SingleFlight<?, ?>) ReflectionTestUtils.getField(customerService, lookups)).getFollowerCount();
+	}
+
+	/**
+	 * @param result the lookup result , null to fail the lookup
+	 */
+	private Optional<Customer> heldLookup(Optional<Customer> result) throws InterruptedException {
+		lookupStarted.countDown();
+		releaseLookup.await();
+		if (result == null) {
+			throw new QueryTimeoutException("db too slow");
+		}
+		return result;
+	}
+}
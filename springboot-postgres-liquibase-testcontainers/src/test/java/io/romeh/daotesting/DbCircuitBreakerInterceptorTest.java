@@ -0,0 +1,178 @@
+package io.romeh.daotesting;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerOpenException;
+import io.romeh.daotesting.config.DbCircuitBreakerConfig;
+import io.romeh.daotesting.dao.CustomerJdbcRepository;
+import io.romeh.daotesting.dao.CustomerRepository;
+import io.romeh.daotesting.domain.Customer;
+
+/**
+ * @author romeh
+ */
+public class DbCircuitBreakerInterceptorTest {
+
+	private final CustomerRepository repositoryMock = mock(CustomerRepository.class);
+	private final Customer customer = Customer.builder().id(1).name("TestRomeh").address("Brussels").build();
+	private CircuitBreaker circuitBreaker;
+	private Bulkhead bulkhead;
+	private CustomerRepository customerRepository;
+
+	@Before
+	public void setUp() {
+		circuitBreaker = CircuitBreaker.of(DbCircuitBreakerConfig.DB_CIRCUIT_BREAKER_NAME,
+				DbCircuitBreakerConfig.dbCircuitBreakerConfig(50, 4, 2, Duration.ofMinutes(1)));
+		bulkhead = Bulkhead.of(DbCircuitBreakerConfig.DB_CIRCUIT_BREAKER_NAME, BulkheadConfig.custom()
+				.maxConcurrentCalls(10)
+				.maxWaitTime(0)
+				.build());
+		Cache<List<Object>, Object> fallbackCache = Caffeine.newBuilder().build();
+		ProxyFactory proxyFactory = new ProxyFactory(repositoryMock);
+		proxyFactory.addAdvisor(DbCircuitBreakerConfig.fallbackAdvisor(DbCircuitBreakerConfig.FALLBACK_READ_METHODS, () -> fallbackCache));
+		proxyFactory.addAdvisor(DbCircuitBreakerConfig.circuitBreakerAdvisor(DbCircuitBreakerConfig.SHORT_CALL_METHODS,
+				() -> circuitBreaker, () -> bulkhead));
+		customerRepository = (CustomerRepository) proxyFactory.getProxy();
+	}
+
+	@Test
+	public void shouldOpenOnTheDbUnavailableErrorsOnly() {
+		given(repositoryMock.findById(1L)).willThrow(new DataIntegrityViolationException("broken"));
+		for (int i = 0; i < 4; i++) {
+			failingCall();
+		}
+		Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+		willThrow(new QueryTimeoutException("db too slow")).given(repositoryMock).findById(1L);
+		for (int i = 0; i < 4; i++) {
+			failingCall();
+		}
+		Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+	}
+
+	@Test
+	public void shouldFailFastOnceOpen() {
+		circuitBreaker.transitionToOpenState();
+
+		try {
+			customerRepository.findById(1L);
+			Assert.fail("the call should not be permitted");
+		} catch (CircuitBreakerOpenException expected) {
+			// nothing to fall back to
+		}
+		verify(repositoryMock, times(0)).findById(1L);
+	}
+
+	@Test
+	public void shouldServeTheLastKnownGoodReadOnceOpen() {
+		given(repositoryMock.findById(1L)).willReturn(Optional.of(customer));
+		Assert.assertEquals(Optional.of(customer), customerRepository.findById(1L));
+
+		circuitBreaker.transitionToOpenState();
+
+		Assert.assertEquals(Optional.of(customer), customerRepository.findById(1L));
+		verify(repositoryMock, times(1)).findById(1L);
+	}
+
+	@Test
+	public void shouldNotAskTheCircuitBreakerWhenTheBulkheadIsFull() {
+		// a permission taken before the bulkhead rejects would never be given back , a half open call of the newer circuit breakers
+		circuitBreaker = mock(CircuitBreaker.class);
+		for (int i = 0; i < 10; i++) {
+			Assert.assertTrue(bulkhead.isCallPermitted());
+		}
+
+		try {
+			customerRepository.findById(1L);
+			Assert.fail("the bulkhead should be full");
+		} catch (BulkheadFullException expected) {
+			// rejected before the circuit breaker is asked
+		}
+		verify(circuitBreaker, never()).isCallPermitted();
+		verify(repositoryMock, never()).findById(1L);
+	}
+
+	@Test
+	public void shouldReleaseTheBulkheadWhenTheCircuitBreakerRejects() {
+		circuitBreaker.transitionToOpenState();
+
+		for (int i = 0; i < 20; i++) {
+			try {
+				customerRepository.findById(1L);
+				Assert.fail("the call should not be permitted");
+			} catch (CircuitBreakerOpenException expected) {
+				// the bulkhead call is given back
+			}
+		}
+		Assert.assertEquals(10, bulkhead.getMetrics().getAvailableConcurrentCalls());
+	}
+
+	@Test
+	public void shouldRunTheExportsOnTheirOwnBulkhead() {
+		CustomerJdbcRepository jdbcRepositoryMock = mock(CustomerJdbcRepository.class);
+		Bulkhead exportBulkhead = Bulkhead.of(DbCircuitBreakerConfig.DB_EXPORT_BULKHEAD_NAME, BulkheadConfig.custom()
+				.maxConcurrentCalls(1)
+				.maxWaitTime(0)
+				.build());
+		ProxyFactory proxyFactory = new ProxyFactory(jdbcRepositoryMock);
+		proxyFactory.setProxyTargetClass(true);
+		proxyFactory.addAdvisor(DbCircuitBreakerConfig.circuitBreakerAdvisor(DbCircuitBreakerConfig.SHORT_CALL_METHODS,
+				() -> circuitBreaker, () -> bulkhead));
+		proxyFactory.addAdvisor(DbCircuitBreakerConfig.circuitBreakerAdvisor(DbCircuitBreakerConfig.EXPORT_METHODS,
+				() -> circuitBreaker, () -> exportBulkhead));
+		CustomerJdbcRepository customerJdbcRepository = (CustomerJdbcRepository) proxyFactory.getProxy();
+		Consumer<Customer> consumer = exported -> {
+		};
+
+		// the short calls took all the permits of their bulkhead
+		for (int i = 0; i < 10; i++) {
+			Assert.assertTrue(bulkhead.isCallPermitted());
+		}
+		customerJdbcRepository.streamAllCustomers(consumer);
+		verify(jdbcRepositoryMock).streamAllCustomers(consumer);
+		Assert.assertEquals(1, exportBulkhead.getMetrics().getAvailableConcurrentCalls());
+
+		// a running export takes the only permit of the exports
+		Assert.assertTrue(exportBulkhead.isCallPermitted());
+		try {
+			customerJdbcRepository.streamAllCustomers(consumer);
+			Assert.fail("the export should be rejected");
+		} catch (BulkheadFullException expected) {
+			// the other exports are rejected at once
+		}
+		verify(jdbcRepositoryMock, times(1)).streamAllCustomers(consumer);
+	}
+
+	private void failingCall() {
+		try {
+			customerRepository.findById(1L);
+			Assert.fail("the db exception should go through");
+		} catch (DataIntegrityViolationException | QueryTimeoutException expected) {
+			// recorded by the circuit breaker when it tells the db is unavailable
+		}
+	}
+}
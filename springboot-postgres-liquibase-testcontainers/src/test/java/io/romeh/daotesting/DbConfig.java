@@ -1,9 +1,8 @@
 package io.romeh.daotesting;
 
-import static io.romeh.daotesting.PostgresEmbeddedDaoTestingApplicationTests.postgreSQLContainer;
-import static java.lang.String.format;
-
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Properties;
 
 import javax.sql.DataSource;
@@ -12,20 +11,25 @@ import org.hibernate.cfg.AvailableSettings;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.dao.annotation.PersistenceExceptionTranslationPostProcessor;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
-import org.testcontainers.containers.PostgreSQLContainer;
 
+import io.romeh.daotesting.dao.CustomerJdbcRepository;
 import io.romeh.daotesting.dao.CustomerRepository;
 import liquibase.integration.spring.SpringLiquibase;
 
 /**
  * @author romeh
+ * the db test configuration on the shared postgres container , the spring test context cache keeps one instance of it per jvm ,
+ * so the schema is migrated and the test data loaded once for all the dao test classes , in a template database cloned for every
+ * test thread , see {@link AbstractDaoTest} and {@link PerWorkerDataSource}
  */
 @Configuration
 @EnableTransactionManagement
@@ -33,17 +37,14 @@ import liquibase.integration.spring.SpringLiquibase;
 @Profile("DaoTest")
 public class DbConfig {
 
+	private static final String SCHEMA = "test";
+
+	/**
+	 * a small pool per test thread , so the tests do not open a physical connection per transaction
+	 */
 	@Bean
-	public DataSource dataSource() {
-		DriverManagerDataSource ds = new DriverManagerDataSource();
-		ds.setDriverClassName("org.postgresql.Driver");
-		ds.setUrl(format("jdbc:postgresql://%s:%s/%s", postgreSQLContainer.getContainerIpAddress(),
-				postgreSQLContainer.getMappedPort(
-						PostgreSQLContainer.POSTGRESQL_PORT), postgreSQLContainer.getDatabaseName()));
-		ds.setUsername(postgreSQLContainer.getUsername());
-		ds.setPassword(postgreSQLContainer.getPassword());
-		ds.setSchema(postgreSQLContainer.getDatabaseName());
-		return ds;
+	public PerWorkerDataSource dataSource() {
+		return new PerWorkerDataSource(SharedPostgreSQLContainer.getInstance(), "customer", SCHEMA, 4, DbConfig::initializeTemplate);
 	}
 
 
@@ -80,24 +81,36 @@ public class DbConfig {
 		return transactionManager;
 	}
 
+	/**
+	 * the jdbc repository with a fetch size smaller than the test tables , so the streamed rows come from several cursor fetches
+	 */
+	@Bean
+	public CustomerJdbcRepository customerJdbcRepository(DataSource dataSource) {
+		return new CustomerJdbcRepository(dataSource, 2);
+	}
+
 	@Bean
 	public PersistenceExceptionTranslationPostProcessor exceptionTranslation() {
 		return new PersistenceExceptionTranslationPostProcessor();
 	}
 
-	@Bean
-	public SpringLiquibase springLiquibase(DataSource dataSource) throws SQLException {
-		tryToCreateSchema(dataSource);
+	/**
+	 * migrate the template database and commit the test data in it , every test thread starts from a clone of it ,
+	 * the tests roll their changes back so they all start from the test data ,
+	 * the test postgres is a postgres 11 so the customer table is hash partitioned like on a db of the partitioned context
+	 */
+	static void initializeTemplate(DataSource template) throws Exception {
+		tryToCreateSchema(template);
 		SpringLiquibase liquibase = new SpringLiquibase();
-		liquibase.setDropFirst(true);
-		liquibase.setDataSource(dataSource);
-		liquibase.setDefaultSchema("test");
-		//liquibase.setIgnoreClasspathPrefix(false);
+		liquibase.setDataSource(template);
+		liquibase.setDefaultSchema(SCHEMA);
 		liquibase.setChangeLog("classpath:/db/changelog/changelog-master.xml");
-		return liquibase;
+		liquibase.setContexts("default,partitioned");
+		liquibase.setResourceLoader(new DefaultResourceLoader());
+		liquibase.afterPropertiesSet();
+		new ResourceDatabasePopulator(new ClassPathResource("dao/TestData.sql")).execute(template);
 	}
 
-
 	/**
 	 * @return the hibernate properties
 	 */
@@ -111,13 +124,17 @@ public class DbConfig {
 
 		ps.put(AvailableSettings.FORMAT_SQL, "true");
 		ps.put(AvailableSettings.SHOW_SQL, "true");
+		ps.put(AvailableSettings.STATEMENT_INSPECTOR, CapturingStatementInspector.class.getName());
 		return ps;
 
 	}
 
-	private void tryToCreateSchema(DataSource dataSource) throws SQLException {
-		String CREATE_SCHEMA_QUERY = "CREATE SCHEMA IF NOT EXISTS test";
-		dataSource.getConnection().createStatement().execute(CREATE_SCHEMA_QUERY);
+	private static void tryToCreateSchema(DataSource dataSource) throws SQLException {
+		String CREATE_SCHEMA_QUERY = "CREATE SCHEMA IF NOT EXISTS " + SCHEMA;
+		try (Connection connection = dataSource.getConnection();
+		     Statement statement = connection.createStatement()) {
+			statement.execute(CREATE_SCHEMA_QUERY);
+		}
 	}
 
 }
@@ -0,0 +1,98 @@
+package io.romeh.daotesting;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.romeh.daotesting.config.DbHedgingConfig;
+import io.romeh.daotesting.dao.CustomerRepository;
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.resilience.HedgeConfig;
+import io.romeh.daotesting.resilience.HedgedExecutor;
+import io.romeh.daotesting.resilience.ShardedScheduledExecutorService;
+
+/**
+ * @author romeh
+ */
+public class DbHedgingInterceptorTest {
+
+	private final CustomerRepository repositoryMock = mock(CustomerRepository.class);
+	private final ExecutorService hedgingExecutor = Executors.newCachedThreadPool();
+	private final ShardedScheduledExecutorService hedgingScheduler = new ShardedScheduledExecutorService(1, "hedge-timer-");
+	private final CountDownLatch releaseSlowRead = new CountDownLatch(1);
+	private final Customer customer = Customer.builder().id(1).name("TestRomeh").address("Brussels").build();
+	private CustomerRepository customerRepository;
+
+	@Before
+	public void setUp() {
+		// a fixed 50 ms hedge delay , every read can be hedged
+		HedgeConfig hedgeConfig = HedgeConfig.custom()
+				.delayBounds(Duration.ofMillis(50), Duration.ofMillis(50))
+				.maxHedgeRatio(1, Duration.ofSeconds(10))
+				.build();
+		HedgedExecutor hedgedExecutor = HedgedExecutor.of(DbHedgingConfig.DB_HEDGING_NAME, hedgeConfig, hedgingExecutor, hedgingScheduler,
+				new SimpleMeterRegistry());
+		ProxyFactory proxyFactory = new ProxyFactory(repositoryMock);
+		proxyFactory.addAdvisor(DbHedgingConfig.hedgingAdvisor(DbHedgingConfig.HEDGED_READ_METHODS, () -> hedgedExecutor));
+		customerRepository = (CustomerRepository) proxyFactory.getProxy();
+	}
+
+	@After
+	public void tearDown() {
+		releaseSlowRead.countDown();
+		TransactionSynchronizationManager.setActualTransactionActive(false);
+		hedgingExecutor.shutdownNow();
+		hedgingScheduler.shutdownNow();
+	}
+
+	@Test
+	public void shouldHedgeASlowRead() {
+		given(repositoryMock.findById(1L))
+				.willAnswer(invocation -> {
+					releaseSlowRead.await(5, TimeUnit.SECONDS);
+					return Optional.empty();
+				})
+				.willReturn(Optional.of(customer));
+
+		Assert.assertEquals(Optional.of(customer), customerRepository.findById(1L));
+		verify(repositoryMock, times(2)).findById(1L);
+	}
+
+	@Test
+	public void shouldRethrowTheDbExceptionOfAFailedRead() {
+		given(repositoryMock.findById(1L)).willThrow(new QueryTimeoutException("db too slow"));
+
+		try {
+			customerRepository.findById(1L);
+			Assert.fail("the db exception should go through");
+		} catch (QueryTimeoutException expected) {
+			// not wrapped
+		}
+	}
+
+	@Test
+	public void shouldNotHedgeInsideARunningTransaction() {
+		given(repositoryMock.findById(1L)).willReturn(Optional.of(customer));
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+
+		Assert.assertEquals(Optional.of(customer), customerRepository.findById(1L));
+		verify(repositoryMock, times(1)).findById(1L);
+	}
+}
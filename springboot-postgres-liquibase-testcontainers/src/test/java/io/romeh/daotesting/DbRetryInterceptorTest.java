@@ -0,0 +1,116 @@
+package io.romeh.daotesting;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.romeh.daotesting.config.DbRetryConfig;
+import io.romeh.daotesting.dao.CustomerJdbcRepository;
+import io.romeh.daotesting.dao.CustomerRepository;
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.resilience.MeteredRetry;
+
+/**
+ * @author romeh
+ */
+public class DbRetryInterceptorTest {
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final CustomerRepository repositoryMock = mock(CustomerRepository.class);
+	private Advisor retryAdvisor;
+	private CustomerRepository customerRepository;
+
+	@Before
+	public void setUp() {
+		MeteredRetry retry = MeteredRetry.of(Retry.of(DbRetryConfig.DB_RETRY_NAME, DbRetryConfig.dbRetryConfig(3, Duration.ofMillis(10), 2, 0.5)),
+				meterRegistry);
+		ProxyFactory proxyFactory = new ProxyFactory(repositoryMock);
+		retryAdvisor = DbRetryConfig.retryAdvisor(DbRetryConfig.RETRIED_READ_METHODS, () -> retry);
+		proxyFactory.addAdvisor(retryAdvisor);
+		customerRepository = (CustomerRepository) proxyFactory.getProxy();
+	}
+
+	@After
+	public void tearDown() {
+		TransactionSynchronizationManager.setActualTransactionActive(false);
+	}
+
+	@Test
+	public void shouldRetryTheTransientDbErrors() {
+		given(repositoryMock.findById(1L))
+				.willThrow(new QueryTimeoutException("db too slow"))
+				.willThrow(new QueryTimeoutException("db too slow"))
+				.willReturn(Optional.of(Customer.builder().id(1).name("TestRomeh").address("Brussels").build()));
+
+		Assert.assertTrue(customerRepository.findById(1L).isPresent());
+		verify(repositoryMock, times(3)).findById(1L);
+		Assert.assertEquals(1, calls("successful_with_retry"), 0);
+		Assert.assertEquals(3, meterRegistry.get("resilience4j.retry.attempts").summary().totalAmount(), 0);
+	}
+
+	@Test
+	public void shouldNotRetryTheOtherDbErrors() {
+		given(repositoryMock.findById(1L)).willThrow(new DataIntegrityViolationException("broken"));
+
+		try {
+			customerRepository.findById(1L);
+			Assert.fail("the db exception should go through");
+		} catch (DataIntegrityViolationException expected) {
+			// not retried
+		}
+		verify(repositoryMock, times(1)).findById(1L);
+		Assert.assertEquals(1, calls("failed_without_retry"), 0);
+	}
+
+	@Test
+	public void shouldNotRetryInsideARunningTransaction() {
+		given(repositoryMock.findById(1L)).willThrow(new QueryTimeoutException("db too slow"));
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+
+		try {
+			customerRepository.findById(1L);
+			Assert.fail("the db exception should go through");
+		} catch (QueryTimeoutException expected) {
+			// left to the transaction owner
+		}
+		verify(repositoryMock, times(1)).findById(1L);
+	}
+
+	@Test
+	public void shouldNotRetryTheWritesNorTheExport() {
+		Customer customer = Customer.builder().name("TestRomeh").address("Brussels").build();
+		given(repositoryMock.save(customer)).willThrow(new QueryTimeoutException("commit outcome unknown"));
+
+		try {
+			customerRepository.save(customer);
+			Assert.fail("the db exception should go through");
+		} catch (QueryTimeoutException expected) {
+			// a retry could insert the customer twice
+		}
+		verify(repositoryMock, times(1)).save(customer);
+		// the rows of the export already sent would be sent again
+		Assert.assertFalse(AopUtils.canApply(retryAdvisor, CustomerJdbcRepository.class));
+	}
+
+	private double calls(String kind) {
+		return meterRegistry.get("resilience4j.retry.calls").tags("name", DbRetryConfig.DB_RETRY_NAME, "kind", kind).counter().count();
+	}
+}
@@ -0,0 +1,114 @@
+package io.romeh.daotesting;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import de.flapdoodle.embed.process.runtime.Network;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.romeh.daotesting.config.EmbeddedPostgresStarter;
+import ru.yandex.qatools.embed.postgresql.PostgresProcess;
+import ru.yandex.qatools.embed.postgresql.config.AbstractPostgresConfig;
+import ru.yandex.qatools.embed.postgresql.config.PostgresConfig;
+import ru.yandex.qatools.embed.postgresql.distribution.Version;
+
+/**
+ * @author romeh
+ * the startup of the embedded postgres from the snapshot and its startup meters , bound before the first start like when hikari
+ * pulls the registry in early , postgres refuses to start as root so the starts are skipped when run as root
+ */
+public class EmbeddedPostgresStarterTest {
+
+	private static final String CHANGE_LOG = "classpath:/db/changelog/changelog-master.xml";
+	private static final List<String> PHASES = Arrays.asList("initdb for the snapshot", "migrate the snapshot", "save the snapshot",
+			"restore snapshot", "prepare binaries", "start postgres");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldPublishEveryPhaseBeforeTheFirstStart() throws IOException {
+		EmbeddedPostgresStarter starter = new EmbeddedPostgresStarter(folder.getRoot().toPath(), true, new DefaultResourceLoader(),
+				CHANGE_LOG, "default");
+		MeterRegistry meterRegistry = new SimpleMeterRegistry();
+		starter.bindTo(meterRegistry);
+
+		for (String phase : PHASES) {
+			Assert.assertEquals(phase, 0, phaseMillis(meterRegistry, phase), 0);
+		}
+	}
+
+	@Test
+	public void shouldStartFromTheMigratedSnapshot() throws IOException {
+		Assume.assumeFalse("postgres does not start as root", "root".equals(System.getProperty("user.name")));
+		EmbeddedPostgresStarter starter = new EmbeddedPostgresStarter(Paths.get(System.getProperty("user.home"), ".embedpostgresql",
+				"customer-service"), true, new DefaultResourceLoader(), CHANGE_LOG, "default");
+		MeterRegistry meterRegistry = new SimpleMeterRegistry();
+		starter.bindTo(meterRegistry);
+		try {
+			PostgresProcess first = starter.start(postgresConfig());
+			try {
+				Assert.assertTrue(phaseMillis(meterRegistry, "restore snapshot") > 0);
+				Assert.assertTrue(phaseMillis(meterRegistry, "start postgres") > 0);
+				// the change sets of the snapshot are applied without a migration of the started postgres
+				Assert.assertTrue(jdbcTemplate(first).queryForObject("SELECT count(*) FROM databasechangelog", Integer.class) > 0);
+				Assert.assertEquals(Integer.valueOf(0), jdbcTemplate(first).queryForObject("SELECT count(*) FROM customer", Integer.class));
+			} finally {
+				first.stop();
+			}
+			double buildMillis = phaseMillis(meterRegistry, "initdb for the snapshot") + phaseMillis(meterRegistry, "migrate the snapshot");
+			double restoreMillis = phaseMillis(meterRegistry, "restore snapshot");
+
+			PostgresProcess second = starter.start(postgresConfig());
+			try {
+				Assert.assertEquals(Integer.valueOf(0), jdbcTemplate(second).queryForObject("SELECT count(*) FROM customer", Integer.class));
+			} finally {
+				second.stop();
+			}
+			// the second start copies the snapshot of the first one
+			Assert.assertEquals(buildMillis,
+					phaseMillis(meterRegistry, "initdb for the snapshot") + phaseMillis(meterRegistry, "migrate the snapshot"), 0);
+			Assert.assertTrue(phaseMillis(meterRegistry, "restore snapshot") > restoreMillis);
+		} finally {
+			starter.destroy();
+		}
+	}
+
+	private static double phaseMillis(MeterRegistry meterRegistry, String phase) {
+		return meterRegistry.get("db.embedded.startup").tag("phase", phase).timeGauge().value(TimeUnit.MILLISECONDS);
+	}
+
+	private static JdbcTemplate jdbcTemplate(PostgresProcess process) {
+		PostgresConfig config = process.getConfig();
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				String.format("jdbc:postgresql://%s:%s/%s", config.net().host(), config.net().port(), config.storage().dbName()),
+				config.credentials().username(), config.credentials().password());
+		dataSource.setDriverClassName("org.postgresql.Driver");
+		return new JdbcTemplate(dataSource);
+	}
+
+	/**
+	 * the postgres config of the application , on a free port
+	 */
+	private static PostgresConfig postgresConfig() throws IOException {
+		PostgresConfig config = new PostgresConfig(Version.V9_6_8,
+				new AbstractPostgresConfig.Net("localhost", Network.getFreeServerPort()),
+				new AbstractPostgresConfig.Storage("test"),
+				new AbstractPostgresConfig.Timeout(),
+				new AbstractPostgresConfig.Credentials("user", "pass"));
+		config.getAdditionalInitDbParams().addAll(Arrays.asList("--nosync", "--locale=en_US.UTF-8"));
+		return config;
+	}
+}
@@ -0,0 +1,80 @@
+package io.romeh.daotesting;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.QueryTimeoutException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.romeh.daotesting.config.MethodTimingConfig;
+import io.romeh.daotesting.config.MethodTimingInterceptor;
+import io.romeh.daotesting.dao.CustomerRepository;
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.service.CustomerService;
+
+/**
+ * @author romeh
+ */
+public class MethodTimingInterceptorTest {
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private CustomerRepository customerRepository;
+	private CustomerService customerService;
+
+	@Before
+	public void setUp() {
+		CustomerRepository repositoryMock = mock(CustomerRepository.class);
+		given(repositoryMock.findById(1L)).willReturn(Optional.of(Customer.builder().id(1).name("TestRomeh").address("Brussels").build()));
+		given(repositoryMock.findById(2L)).willThrow(new QueryTimeoutException("db too slow"));
+
+		customerRepository = proxy(repositoryMock, MethodTimingConfig.timingAdvisor(MethodTimingConfig.REPOSITORY_METHODS, "repository",
+				() -> meterRegistry));
+		customerService = proxy(new CustomerService(customerRepository, null, false, 5000, null, null),
+				MethodTimingConfig.timingAdvisor(MethodTimingConfig.SERVICE_METHODS, "service", () -> meterRegistry));
+	}
+
+	@Test
+	public void shouldTimeTheServiceAndTheRepositoryCalls() {
+		customerService.findCustomerById(1);
+		customerService.findCustomerById(1);
+
+		Assert.assertEquals(2, timer("service", "findCustomerById", "success").count());
+		Assert.assertEquals(2, timer("repository", "findById", "success").count());
+		Assert.assertTrue(timer("repository", "findById", "success").totalTime(TimeUnit.NANOSECONDS) > 0);
+	}
+
+	@Test
+	public void shouldTimeTheFailedCallsApart() {
+		try {
+			customerService.findCustomerById(2);
+			Assert.fail("the db exception should go through");
+		} catch (QueryTimeoutException expected) {
+			// timed as an error
+		}
+
+		Assert.assertEquals(1, timer("service", "findCustomerById", "error").count());
+		Assert.assertEquals(0, timer("service", "findCustomerById", "success").count());
+	}
+
+	private Timer timer(String layer, String method, String outcome) {
+		return meterRegistry.get(MethodTimingInterceptor.METRIC_NAME).tags("layer", layer, "method", method, "outcome", outcome).timer();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(T target, Advisor advisor) {
+		ProxyFactory proxyFactory = new ProxyFactory(target);
+		proxyFactory.setProxyTargetClass(!(target instanceof CustomerRepository));
+		proxyFactory.addAdvisor(advisor);
+		return (T) proxyFactory.getProxy();
+	}
+}
@@ -0,0 +1,175 @@
+package io.romeh.daotesting;
+
+import static java.lang.String.format;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * @author romeh
+ * a data source giving every test thread its own database , cloned from a template database initialized once ,
+ * so the test classes can run in parallel threads (see the parallel-tests maven profile) without seeing the rows of each other ,
+ * the template is created by the first connection request and the database of a thread by the first connection request of the thread ,
+ * postgres does not clone a database with open connections , so the template is only initialized through non pooled connections
+ * and the clones are created one at a time ,
+ * the hibernate sequence optimizers are per session factory , not per database , so the ids preallocated from the sequence of one worker
+ * database are also given to the inserts of the other workers , the sequences of the worker n are therefore restarted at
+ * n * WORKER_SEQUENCE_RANGE , every preallocated range is then unique across all the worker databases , and the ids of a worker are
+ * not the contiguous values of its own sequence
+ */
+public class PerWorkerDataSource extends AbstractDataSource implements DisposableBean {
+
+	/**
+	 * the initialization of the template database , the migration and the test data of the workers
+	 */
+	@FunctionalInterface
+	public interface TemplateInitializer {
+		void initialize(DataSource template) throws Exception;
+	}
+
+	/**
+	 * the ids of the sequences of a worker , far more than the rows a test run inserts
+	 */
+	public static final long WORKER_SEQUENCE_RANGE = 1_000_000_000L;
+
+	private final SharedPostgreSQLContainer postgres;
+	private final String databasePrefix;
+	private final String schema;
+	private final int poolSizePerWorker;
+	private final TemplateInitializer templateInitializer;
+	private final AtomicInteger workers = new AtomicInteger();
+	private final ThreadLocal<Integer> worker;
+	private final ConcurrentMap<String, HikariDataSource> workerDataSources = new ConcurrentHashMap<>();
+	private boolean templateInitialized;
+
+	/**
+	 * @param postgres            the postgres of the template and worker databases
+	 * @param databasePrefix      the prefix of the template and worker database names , unique per data source of the jvm
+	 * @param schema              the schema of the worker connections
+	 * @param poolSizePerWorker   the maximum connections of a worker database
+	 * @param templateInitializer the initialization of the template database
+	 */
+	public PerWorkerDataSource(SharedPostgreSQLContainer postgres, String databasePrefix, String schema, int poolSizePerWorker,
+	                           TemplateInitializer templateInitializer) {
+		this.postgres = postgres;
+		this.databasePrefix = databasePrefix;
+		this.schema = schema;
+		this.poolSizePerWorker = poolSizePerWorker;
+		this.templateInitializer = templateInitializer;
+		this.worker = ThreadLocal.withInitial(workers::incrementAndGet);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return workerDataSource().getConnection();
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return workerDataSource().getConnection(username, password);
+	}
+
+	/**
+	 * @return the name of the database of the current thread
+	 */
+	public String getWorkerDatabase() {
+		return databasePrefix + "_worker_" + worker.get();
+	}
+
+	private DataSource workerDataSource() throws SQLException {
+		HikariDataSource dataSource = workerDataSources.get(getWorkerDatabase());
+		return dataSource != null ? dataSource : createWorkerDataSource(getWorkerDatabase(), worker.get());
+	}
+
+	private synchronized HikariDataSource createWorkerDataSource(String database, int workerNumber) throws SQLException {
+		String template = databasePrefix + "_template";
+		if (!templateInitialized) {
+			execute("DROP DATABASE IF EXISTS " + template, "CREATE DATABASE " + template);
+			try {
+				templateInitializer.initialize(nonPooledDataSource(template));
+			} catch (Exception e) {
+				throw new SQLException("the initialization of the template database " + template + " failed", e);
+			}
+			templateInitialized = true;
+		}
+		execute("DROP DATABASE IF EXISTS " + database, format("CREATE DATABASE %s TEMPLATE %s", database, template));
+		restartSequences(database, workerNumber * WORKER_SEQUENCE_RANGE);
+
+		HikariDataSource dataSource = new HikariDataSource();
+		dataSource.setPoolName(database);
+		dataSource.setDriverClassName("org.postgresql.Driver");
+		dataSource.setJdbcUrl(postgres.getDatabaseUrl(database));
+		dataSource.setUsername(postgres.getUsername());
+		dataSource.setPassword(postgres.getPassword());
+		dataSource.setSchema(schema);
+		dataSource.setMaximumPoolSize(poolSizePerWorker);
+		workerDataSources.put(database, dataSource);
+		return dataSource;
+	}
+
+	/**
+	 * run the statements on the default database of the container , the database statements can not run on the template or a worker database
+	 */
+	private void execute(String... statements) throws SQLException {
+		try (Connection connection = nonPooledDataSource(postgres.getDatabaseName()).getConnection();
+		     Statement statement = connection.createStatement()) {
+			for (String sql : statements) {
+				statement.execute(sql);
+			}
+		}
+	}
+
+	/**
+	 * restart the sequences of the schema of the worker database at the start of the worker range
+	 */
+	private void restartSequences(String database, long start) throws SQLException {
+		try (Connection connection = nonPooledDataSource(database).getConnection();
+		     PreparedStatement sequenceNames = connection.prepareStatement(
+				     "SELECT sequence_name FROM information_schema.sequences WHERE sequence_schema = ?");
+		     Statement statement = connection.createStatement()) {
+			sequenceNames.setString(1, schema);
+			List<String> sequences = new ArrayList<>();
+			try (ResultSet resultSet = sequenceNames.executeQuery()) {
+				while (resultSet.next()) {
+					sequences.add(resultSet.getString(1));
+				}
+			}
+			for (String sequence : sequences) {
+				statement.execute(format("ALTER SEQUENCE %s.%s RESTART WITH %d", schema, sequence, start));
+			}
+		}
+	}
+
+	private DriverManagerDataSource nonPooledDataSource(String database) {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(postgres.getDatabaseUrl(database), postgres.getUsername(),
+				postgres.getPassword());
+		dataSource.setDriverClassName("org.postgresql.Driver");
+		// the plain sql change sets of the template migration run on the schema of the connection
+		dataSource.setSchema(schema);
+		return dataSource;
+	}
+
+	/**
+	 * close the worker pools , the databases go away with the container
+	 */
+	@Override
+	public void destroy() {
+		workerDataSources.values().forEach(HikariDataSource::close);
+	}
+}
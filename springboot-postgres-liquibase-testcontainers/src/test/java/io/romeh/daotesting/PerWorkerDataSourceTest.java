@@ -0,0 +1,121 @@
+package io.romeh.daotesting;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.romeh.daotesting.domain.Customer;
+
+/**
+ * @author romeh
+ * the databases of the test threads , cloned from the migrated template with its test data , and the ids of one shared session factory
+ */
+public class PerWorkerDataSourceTest {
+
+	private final PerWorkerDataSource dataSource = new PerWorkerDataSource(SharedPostgreSQLContainer.getInstance(), "worker_test", "test", 2,
+			DbConfig::initializeTemplate);
+	private final ExecutorService firstWorker = Executors.newSingleThreadExecutor();
+	private final ExecutorService secondWorker = Executors.newSingleThreadExecutor();
+
+	@After
+	public void tearDown() {
+		firstWorker.shutdownNow();
+		secondWorker.shutdownNow();
+		dataSource.destroy();
+	}
+
+	@Test
+	public void shouldGiveEveryThreadItsOwnMigratedDatabase() throws Exception {
+		String firstDatabase = onWorker(0, () -> {
+			Assert.assertEquals(1, countCustomers());
+			// committed , the database of the other thread must still not see it
+			execute("INSERT INTO customer (id, address, name, is_active) VALUES (2, 'Brussels', 'Committed', true)");
+			Assert.assertEquals(2, countCustomers());
+			return dataSource.getWorkerDatabase();
+		});
+		String secondDatabase = onWorker(1, () -> {
+			Assert.assertEquals(1, countCustomers());
+			return dataSource.getWorkerDatabase();
+		});
+
+		Assert.assertNotEquals(firstDatabase, secondDatabase);
+		// the same thread keeps its database
+		Assert.assertEquals(firstDatabase, onWorker(0, dataSource::getWorkerDatabase));
+		Assert.assertEquals(2, (long) onWorker(0, this::countCustomers));
+	}
+
+	@Test
+	public void shouldNotGiveAnIdOfTheSharedSequenceOptimizerTwice() throws Exception {
+		EntityManagerFactory entityManagerFactory = new DbConfig().entityManagerFactory(dataSource).getObject();
+		try {
+			// 30 rows a turn , so the 50 ids preallocated by one worker are used by the inserts of the other one
+			for (int turn = 0; turn < 4; turn++) {
+				int worker = turn % 2;
+				onWorker(worker, () -> insertCustomers(entityManagerFactory, 30));
+			}
+			Assert.assertEquals(61, (long) onWorker(0, this::countCustomers));
+			Assert.assertEquals(61, (long) onWorker(1, this::countCustomers));
+			Assert.assertTrue(onWorker(0, () -> maxCustomerId() > PerWorkerDataSource.WORKER_SEQUENCE_RANGE));
+		} finally {
+			entityManagerFactory.close();
+		}
+	}
+
+	private Void insertCustomers(EntityManagerFactory entityManagerFactory, int count) {
+		EntityManager entityManager = entityManagerFactory.createEntityManager();
+		try {
+			entityManager.getTransaction().begin();
+			for (int i = 0; i < count; i++) {
+				entityManager.persist(Customer.builder().name("Worker").address("Brussels").build());
+			}
+			entityManager.getTransaction().commit();
+			return null;
+		} finally {
+			entityManager.close();
+		}
+	}
+
+	/**
+	 * @param worker the worker thread , 0 or 1 , a single thread executor each so a worker is always the same thread
+	 */
+	private <T> T onWorker(int worker, Callable<T> task) throws Exception {
+		return (worker == 0 ? firstWorker : secondWorker).submit(task).get(60, TimeUnit.SECONDS);
+	}
+
+	private long countCustomers() throws SQLException {
+		try (Connection connection = dataSource.getConnection();
+		     Statement statement = connection.createStatement();
+		     ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM customer")) {
+			resultSet.next();
+			return resultSet.getLong(1);
+		}
+	}
+
+	private long maxCustomerId() throws SQLException {
+		try (Connection connection = dataSource.getConnection();
+		     Statement statement = connection.createStatement();
+		     ResultSet resultSet = statement.executeQuery("SELECT max(id) FROM customer")) {
+			resultSet.next();
+			return resultSet.getLong(1);
+		}
+	}
+
+	private void execute(String sql) throws SQLException {
+		try (Connection connection = dataSource.getConnection();
+		     Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+}
@@ -1,42 +1,68 @@
 package io.romeh.daotesting;
 
-import java.time.Duration;
+import static io.romeh.daotesting.CapturingStatementInspector.statementOf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import javax.validation.Validation;
 
+import org.hibernate.Session;
 import org.junit.Assert;
-import org.junit.ClassRule;
 import org.junit.Test;
-import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.test.context.ActiveProfiles;
-import org.springframework.test.context.ContextConfiguration;
-import org.springframework.test.context.jdbc.Sql;
-import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.testcontainers.containers.PostgreSQLContainer;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.romeh.daotesting.dao.CustomerJdbcRepository;
 import io.romeh.daotesting.dao.CustomerRepository;
 import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.CustomerBulkImporter;
+import io.romeh.daotesting.rest.dto.BulkCreateResponse;
+import io.romeh.daotesting.rest.dto.CustomerDto;
+import io.romeh.daotesting.rest.dto.CustomerMapperImpl;
+import io.romeh.daotesting.service.CustomerService;
 
 
-@RunWith(SpringJUnit4ClassRunner.class)
-@ContextConfiguration(classes = {DbConfig.class})
-@ActiveProfiles("DaoTest")
-@Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = "classpath:dao/TestData.sql")
-public class PostgresEmbeddedDaoTestingApplicationTests {
+public class PostgresEmbeddedDaoTestingApplicationTests extends AbstractDaoTest {
 
-	@ClassRule
-	public static PostgreSQLContainer postgreSQLContainer = (PostgreSQLContainer) new PostgreSQLContainer(
-			"postgres:10.3")
-			.withDatabaseName("test")
-			.withUsername("user")
-			.withPassword("pass").withStartupTimeout(Duration.ofSeconds(600));
+	private static final Pattern PARTITION = Pattern.compile("customer_p\\d+");
 
 	@Autowired
 	private CustomerRepository customerRepository;
+	@Autowired
+	private CustomerJdbcRepository customerJdbcRepository;
+	@Autowired
+	private DataSource dataSource;
+	@PersistenceContext
+	private EntityManager entityManager;
 
 	@Test
-	@Transactional
 	public void contextLoads() {
 
 		customerRepository.save(Customer.builder()
@@ -47,4 +73,234 @@ public class PostgresEmbeddedDaoTestingApplicationTests {
 
 		Assert.assertTrue(customerRepository.findCustomerByName("TestName") != null);
 	}
+
+	@Test
+	public void shouldGenerateIdsFromTheSequence() {
+		Customer first = customerRepository.save(Customer.builder().name("first").address("brussels").build());
+		Customer second = customerRepository.save(Customer.builder().name("second").address("brussels").build());
+
+		// the test data row has the id 1 , the sequence must not hand it out again
+		Assert.assertTrue(first.getId() > 1);
+		Assert.assertNotEquals(first.getId(), second.getId());
+		// the name query flushes the pending inserts
+		Assert.assertEquals(second.getId(), customerRepository.findCustomerByName("second").get().getId());
+	}
+
+	@Test
+	public void shouldPageCustomersByKeyset() {
+		for (int i = 0; i < 5; i++) {
+			customerRepository.save(Customer.builder().name("page" + i).address("brussels").build());
+		}
+
+		// the test data row plus the 5 saved ones
+		List<Customer> firstPage = customerRepository.findByIdGreaterThanOrderByIdAsc(0, PageRequest.of(0, 4));
+		List<Customer> secondPage = customerRepository.findByIdGreaterThanOrderByIdAsc(firstPage.get(3).getId(), PageRequest.of(0, 4));
+
+		Assert.assertEquals(4, firstPage.size());
+		Assert.assertEquals(2, secondPage.size());
+		Assert.assertTrue(secondPage.get(0).getId() > firstPage.get(3).getId());
+	}
+
+	@Test
+	public void shouldReadTheKeysetPageStraightIntoTheDtos() {
+		for (int i = 0; i < 5; i++) {
+			customerRepository.save(Customer.builder().name("dto" + i).address("brussels").build());
+		}
+		entityManager.flush();
+		entityManager.clear();
+
+		List<CustomerDto> firstPage = customerRepository.findDtosAfter(0, PageRequest.of(0, 4));
+		List<CustomerDto> secondPage = customerRepository.findDtosAfter(firstPage.get(3).getId(), PageRequest.of(0, 4));
+
+		Assert.assertEquals(4, firstPage.size());
+		Assert.assertEquals(2, secondPage.size());
+		Assert.assertEquals(new CustomerDto(1, "TestRomeh", "Brussels", true), firstPage.get(0));
+		Assert.assertEquals("dto4", secondPage.get(1).getName());
+		// nothing was loaded in the persistence context
+		Assert.assertEquals(0, entityManager.unwrap(Session.class).getStatistics().getEntityCount());
+	}
+
+	@Test
+	public void shouldFindTheCustomersOfAllTheIdsInOneQuery() {
+		Customer first = customerRepository.save(Customer.builder().name("first").address("brussels").build());
+		Customer second = customerRepository.save(Customer.builder().name("second").address("brussels").build());
+		entityManager.flush();
+
+		List<Customer> customers = customerRepository.findAllByIdAny(Arrays.asList(first.getId(), second.getId(), -1L));
+
+		Assert.assertEquals(2, customers.size());
+		Assert.assertTrue(customers.stream().anyMatch(customer -> "second".equals(customer.getName())));
+	}
+
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void shouldStreamAllCustomersOrderedByIdFromACursor() {
+		// no test transaction , the export runs in the read only transaction of the repository proxy , so the rows are committed here
+		Iterable<Customer> saved = customerRepository.saveAll(IntStream.range(0, 5)
+				.mapToObj(i -> Customer.builder().name("export" + i).address("brussels").build())
+				.collect(Collectors.toList()));
+		try {
+			List<Long> ids = new ArrayList<>();
+			Set<Boolean> inReadOnlyTransaction = new HashSet<>();
+			customerJdbcRepository.streamAllCustomers(customer -> {
+				ids.add(customer.getId());
+				// the postgres driver only reads through a cursor with auto commit off
+				inReadOnlyTransaction.add(TransactionSynchronizationManager.isActualTransactionActive()
+						&& TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+			});
+
+			Assert.assertEquals(6, ids.size());
+			for (int i = 1; i < ids.size(); i++) {
+				Assert.assertTrue(ids.get(i) > ids.get(i - 1));
+			}
+			Assert.assertEquals(Collections.singleton(true), inReadOnlyTransaction);
+		} finally {
+			customerRepository.deleteAll(saved);
+		}
+	}
+
+	@Test
+	public void shouldImportEveryRowOfTheBatches() throws IOException {
+		// batches of 2 , so the 3 rows are saved by 2 createCustomers calls
+		CustomerBulkImporter customerBulkImporter = new CustomerBulkImporter(new CustomerService(customerRepository, null, false, 5000, null, null),
+				new CustomerMapperImpl(), Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper(), 2, 10);
+
+		BulkCreateResponse response = customerBulkImporter.importCustomers(new ByteArrayInputStream(("{\"name\":\"bulk1\",\"address\":\"Brussels\"}\n"
+				+ "{\"name\":\"bulk2\",\"address\":\"Ghent\"}\n"
+				+ "{\"name\":\"bulk3\",\"address\":\"Liege\"}\n").getBytes(StandardCharsets.UTF_8)));
+
+		Assert.assertEquals(3, response.getCreated());
+		Assert.assertEquals(0, response.getFailed());
+		// the test data row plus every imported one , each with its own id
+		Assert.assertEquals(4, customerRepository.count());
+		Set<Long> ids = new HashSet<>();
+		for (String name : Arrays.asList("bulk1", "bulk2", "bulk3")) {
+			ids.add(customerRepository.findCustomerByName(name).get().getId());
+		}
+		Assert.assertEquals(3, ids.size());
+	}
+
+	@Test
+	public void shouldUpdateOnlyTheExpectedVersion() {
+		Customer customer = customerRepository.save(Customer.builder().name("versioned").address("brussels").build());
+		entityManager.flush();
+		Assert.assertEquals(0, customer.getVersion());
+
+		Assert.assertEquals(1, customerRepository.updateIfVersion(customer.getId(), 0, "renamed", "ghent", true));
+		// a second writer of the version 0 does not overwrite the first one
+		Assert.assertEquals(0, customerRepository.updateIfVersion(customer.getId(), 0, "lost", "liege", false));
+		entityManager.clear();
+
+		Customer updated = customerRepository.findById(customer.getId()).get();
+		Assert.assertEquals("renamed", updated.getName());
+		Assert.assertEquals(1, updated.getVersion());
+	}
+
+	@Test
+	public void shouldReadTheVersionAlone() {
+		Assert.assertEquals(Optional.of(0L), customerRepository.findVersionById(1L));
+		Assert.assertFalse(customerRepository.findVersionById(-1L).isPresent());
+	}
+
+	@Test
+	public void shouldLockTheRowOfTheVersionForUpdate() {
+		Assert.assertEquals(Optional.of(0L), customerRepository.findVersionForUpdate(1L));
+		Assert.assertFalse(customerRepository.findVersionForUpdate(-1L).isPresent());
+		Assert.assertTrue(statementOf(() -> customerRepository.findVersionForUpdate(1L)).toLowerCase().contains("for update"));
+	}
+
+	@Test
+	public void shouldStartEveryTestFromTheTestDataOnly() {
+		// the customers saved by the other tests are rolled back , whatever their order
+		Assert.assertEquals(1, customerRepository.count());
+		Assert.assertEquals("TestRomeh", customerRepository.findById(1L).get().getName());
+	}
+
+	@Test
+	public void findCustomerByNameShouldUseTheNameIndex() throws SQLException {
+		assertIndexIsUsed(statementOf(() -> customerRepository.findCustomerByName("TestRomeh")), "TestRomeh");
+	}
+
+	@Test
+	public void findCustomerByNameIgnoreCaseShouldUseTheUpperNameIndex() throws SQLException {
+		assertIndexIsUsed(statementOf(() -> customerRepository.findCustomerByNameIgnoreCase("testromeh")), "testromeh");
+	}
+
+	@Test
+	public void findByIdShouldReadOnePartition() throws SQLException {
+		Assert.assertEquals(1, partitionsRead(statementOf(() -> customerRepository.findById(1L)), 1L));
+		// postgres 11 only prunes the hash partitions of the queries , the updates are pruned from postgres 12 on
+		Assert.assertEquals(serverVersionNum() >= 120000 ? 1 : 16, partitionsRead(
+				statementOf(() -> customerRepository.updateIfVersion(1L, 0L, "renamed", "brussels", true)), "renamed", "brussels", true, 1L, 0L));
+		// the names are not the partition key
+		Assert.assertEquals(16, partitionsRead(statementOf(() -> customerRepository.findCustomerByName("TestRomeh")), "TestRomeh"));
+	}
+
+	private int serverVersionNum() throws SQLException {
+		try (Connection connection = dataSource.getConnection();
+		     Statement statement = connection.createStatement();
+		     ResultSet resultSet = statement.executeQuery("SHOW server_version_num")) {
+			resultSet.next();
+			return resultSet.getInt(1);
+		}
+	}
+
+	/**
+	 * @param query      the sql of a repository call , see {@link CapturingStatementInspector#statementOf}
+	 * @param parameters the values of its ? parameters
+	 * @return the number of customer partitions in the plan of the query
+	 */
+	private int partitionsRead(String query, Object... parameters) throws SQLException {
+		String plan;
+		try (Connection connection = dataSource.getConnection()) {
+			plan = explain(connection, query, parameters);
+		}
+		Set<String> partitions = new HashSet<>();
+		Matcher partition = PARTITION.matcher(plan);
+		while (partition.find()) {
+			partitions.add(partition.group());
+		}
+		return partitions.size();
+	}
+
+	/**
+	 * the test table is too small for the planner to prefer an index , so sequential scans are disabled for the explained query ,
+	 * if no index matches the query postgres still falls back to a sequential scan
+	 *
+	 * @param query      the sql of a repository call , see {@link CapturingStatementInspector#statementOf}
+	 * @param parameters the values of its ? parameters
+	 */
+	private void assertIndexIsUsed(String query, Object... parameters) throws SQLException {
+		String plan;
+		try (Connection connection = dataSource.getConnection();
+		     Statement statement = connection.createStatement()) {
+			statement.execute("SET enable_seqscan = off");
+			try {
+				plan = explain(connection, query, parameters);
+			} finally {
+				// the connection goes back to the pool , the next tests must plan as usual
+				statement.execute("RESET enable_seqscan");
+			}
+		}
+		Assert.assertFalse(plan, plan.contains("Seq Scan"));
+		Assert.assertTrue(plan, plan.contains("Index"));
+	}
+
+	/**
+	 * @return the plan of the query for the given parameter values , as postgres plans it when the repository sends them
+	 */
+	private static String explain(Connection connection, String query, Object... parameters) throws SQLException {
+		StringBuilder plan = new StringBuilder();
+		try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + query)) {
+			for (int i = 0; i < parameters.length; i++) {
+				explain.setObject(i + 1, parameters[i]);
+			}
+			try (ResultSet resultSet = explain.executeQuery()) {
+				while (resultSet.next()) {
+					plan.append(resultSet.getString(1)).append('\n');
+				}
+			}
+		}
+		return plan.toString();
+	}
 }
@@ -0,0 +1,95 @@
+package io.romeh.daotesting;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ByteArrayResource;
+
+import io.romeh.daotesting.config.PostgresSnapshotStore;
+
+/**
+ * @author romeh
+ * the data directory snapshots of the embedded postgres , saved and restored on a fake data directory
+ */
+public class PostgresSnapshotStoreTest {
+
+	private static final List<String> INIT_DB_PARAMS = Arrays.asList("--nosync", "--locale=en_US.UTF-8");
+	private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldRestoreTheSavedDataDirectory() throws IOException {
+		PostgresSnapshotStore store = new PostgresSnapshotStore(folder.getRoot().toPath().resolve("snapshots"));
+		Path dataDir = folder.newFolder("data").toPath();
+		Files.write(Files.createDirectories(dataDir.resolve("base/1")).resolve("1259"), "pg_class".getBytes(StandardCharsets.UTF_8));
+		Files.write(dataDir.resolve("PG_VERSION"), "9.6".getBytes(StandardCharsets.UTF_8));
+		Files.setPosixFilePermissions(dataDir, OWNER_ONLY);
+
+		store.save("9.6.8-1", dataDir);
+		Assert.assertTrue(store.contains("9.6.8-1"));
+
+		Path restoredDir = folder.getRoot().toPath().resolve("restored/data");
+		Files.createDirectories(restoredDir.getParent());
+		Assert.assertTrue(store.restore("9.6.8-1", restoredDir));
+		Assert.assertEquals("pg_class", new String(Files.readAllBytes(restoredDir.resolve("base/1/1259")), StandardCharsets.UTF_8));
+		Assert.assertEquals("9.6", new String(Files.readAllBytes(restoredDir.resolve("PG_VERSION")), StandardCharsets.UTF_8));
+		// postgres does not start on a data directory readable by others
+		Assert.assertEquals(OWNER_ONLY, Files.getPosixFilePermissions(restoredDir));
+	}
+
+	@Test
+	public void shouldKeepTheFirstSnapshotOfAKey() throws IOException {
+		PostgresSnapshotStore store = new PostgresSnapshotStore(folder.getRoot().toPath().resolve("snapshots"));
+		Path firstDataDir = folder.newFolder("first").toPath();
+		Files.write(firstDataDir.resolve("PG_VERSION"), "first".getBytes(StandardCharsets.UTF_8));
+		Path secondDataDir = folder.newFolder("second").toPath();
+		Files.write(secondDataDir.resolve("PG_VERSION"), "second".getBytes(StandardCharsets.UTF_8));
+
+		store.save("9.6.8-1", firstDataDir);
+		store.save("9.6.8-1", secondDataDir);
+
+		Path restoredDir = folder.getRoot().toPath().resolve("restored");
+		Assert.assertTrue(store.restore("9.6.8-1", restoredDir));
+		Assert.assertEquals("first", new String(Files.readAllBytes(restoredDir.resolve("PG_VERSION")), StandardCharsets.UTF_8));
+		// no partial snapshot is left behind
+		Assert.assertEquals(1, folder.getRoot().toPath().resolve("snapshots").toFile().list().length);
+	}
+
+	@Test
+	public void shouldNotRestoreAMissingSnapshot() throws IOException {
+		PostgresSnapshotStore store = new PostgresSnapshotStore(folder.getRoot().toPath().resolve("snapshots"));
+		Path restoredDir = folder.getRoot().toPath().resolve("restored");
+
+		Assert.assertFalse(store.restore("9.6.8-1", restoredDir));
+		Assert.assertFalse(Files.exists(restoredDir));
+	}
+
+	@Test
+	public void shouldKeyTheSnapshotsByChangelogContentAndContexts() throws IOException {
+		String key = PostgresSnapshotStore.snapshotKey("9.6.8-1", INIT_DB_PARAMS, changeLog("<changeSet id=\"1\"/>"), "default");
+
+		Assert.assertTrue(key.startsWith("9.6.8-1-"));
+		Assert.assertEquals(key, PostgresSnapshotStore.snapshotKey("9.6.8-1", INIT_DB_PARAMS, changeLog("<changeSet id=\"1\"/>"), "default"));
+		Assert.assertNotEquals(key, PostgresSnapshotStore.snapshotKey("9.6.8-1", INIT_DB_PARAMS, changeLog("<changeSet id=\"2\"/>"), "default"));
+		Assert.assertNotEquals(key, PostgresSnapshotStore.snapshotKey("10.6-1", INIT_DB_PARAMS, changeLog("<changeSet id=\"1\"/>"), "default"));
+		Assert.assertNotEquals(key, PostgresSnapshotStore.snapshotKey("9.6.8-1", INIT_DB_PARAMS.subList(0, 1), changeLog("<changeSet id=\"1\"/>"), "default"));
+		Assert.assertNotEquals(key, PostgresSnapshotStore.snapshotKey("9.6.8-1", INIT_DB_PARAMS, changeLog("<changeSet id=\"1\"/>"), "default,partitioned"));
+	}
+
+	private static ByteArrayResource changeLog(String content) {
+		return new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,176 @@
+package io.romeh.daotesting;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.mock;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.romeh.daotesting.config.ReplicaRoutingDataSource;
+
+/**
+ * @author romeh
+ * the routing of the read only transactions to the replicas in the rotation , the replicas are checked on demand only
+ */
+public class ReplicaRoutingDataSourceTest {
+
+	private static final long MAX_LAG = 1000;
+
+	private final DataSource primary = mock(DataSource.class);
+	private final Connection primaryConnection = mock(Connection.class);
+	private final Map<String, DataSource> replicas = new LinkedHashMap<>();
+	private final Map<String, Connection> replicaConnections = new LinkedHashMap<>();
+	private final Map<String, ResultSet> replicaLags = new LinkedHashMap<>();
+
+	@Before
+	public void setUp() throws SQLException {
+		given(primary.getConnection()).willReturn(primaryConnection);
+		replica("replica-1", 0);
+		replica("replica-2", 0);
+	}
+
+	@After
+	public void tearDown() {
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+	}
+
+	@Test
+	public void shouldRouteTheReadOnlyTransactionsToTheReplicasRoundRobin() throws SQLException {
+		ReplicaRoutingDataSource routing = routing();
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		routing.bindTo(meterRegistry);
+
+		Assert.assertSame(primaryConnection, targetConnection(routing));
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		Assert.assertSame(replicaConnections.get("replica-1"), targetConnection(routing));
+		Assert.assertSame(replicaConnections.get("replica-2"), targetConnection(routing));
+		Assert.assertSame(replicaConnections.get("replica-1"), targetConnection(routing));
+
+		// and the connection of the lazy connection defaults taken at startup
+		Assert.assertEquals(2, meterRegistry.get("db.routing.connections").tag("target", "primary").functionCounter().count(), 0);
+		Assert.assertEquals(2, meterRegistry.get("db.routing.connections").tag("target", "replica-1").functionCounter().count(), 0);
+		Assert.assertEquals(1, meterRegistry.get("db.replica.in-rotation").tag("replica", "replica-2").gauge().value(), 0);
+	}
+
+	@Test
+	public void shouldKeepTheLaggingAndFailingReplicasOutOfTheRotation() throws SQLException {
+		given(replicaLags.get("replica-1").getLong(1)).willReturn(MAX_LAG + 1);
+		given(replicaConnections.get("replica-2").createStatement()).willThrow(new SQLException("replica down"));
+		ReplicaRoutingDataSource routing = routing();
+
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		Assert.assertEquals(Collections.emptyList(), routing.getReplicasInRotation());
+		Assert.assertSame(primaryConnection, targetConnection(routing));
+
+		// back in the rotation once they pass a health check
+		given(replicaLags.get("replica-1").getLong(1)).willReturn(MAX_LAG);
+		willReturn(statement(replicaLags.get("replica-2"))).given(replicaConnections.get("replica-2")).createStatement();
+		routing.checkReplicas();
+		Assert.assertEquals(Arrays.asList("replica-1", "replica-2"), routing.getReplicasInRotation());
+	}
+
+	@Test
+	public void shouldFailOverWhenAReplicaGivesNoConnection() throws SQLException {
+		ReplicaRoutingDataSource routing = routing();
+		given(replicas.get("replica-1").getConnection()).willThrow(new SQLException("connection refused"));
+
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		Assert.assertSame(replicaConnections.get("replica-2"), targetConnection(routing));
+		Assert.assertEquals(Collections.singletonList("replica-2"), routing.getReplicasInRotation());
+
+		given(replicas.get("replica-2").getConnection()).willThrow(new SQLException("connection refused"));
+		Assert.assertSame(primaryConnection, targetConnection(routing));
+		Assert.assertEquals(Collections.emptyList(), routing.getReplicasInRotation());
+	}
+
+	@Test
+	public void shouldRouteByTheReadOnlyFlagOfTheTransaction() {
+		ReplicaRoutingDataSource dataSource = routing();
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+		transactionTemplate.setReadOnly(true);
+		Assert.assertSame(replicaConnections.get("replica-1"), transactionTemplate.execute(status -> targetConnection(dataSource)));
+		transactionTemplate.setReadOnly(false);
+		Assert.assertSame(primaryConnection, transactionTemplate.execute(status -> targetConnection(dataSource)));
+	}
+
+	@Test
+	public void shouldRouteTheReadsFromThePrimaryToThePrimary() {
+		ReplicaRoutingDataSource dataSource = routing();
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		transactionTemplate.setReadOnly(true);
+
+		Assert.assertSame(primaryConnection,
+				ReplicaRoutingDataSource.readFromPrimary(() -> transactionTemplate.execute(status -> targetConnection(dataSource))));
+		Assert.assertFalse(ReplicaRoutingDataSource.isReadingFromPrimary());
+		Assert.assertSame(replicaConnections.get("replica-1"), transactionTemplate.execute(status -> targetConnection(dataSource)));
+	}
+
+	@Test
+	public void shouldTakeTheConnectionsOfOtherCredentialsFromThePrimary() throws SQLException {
+		Connection otherUserConnection = mock(Connection.class);
+		given(primary.getConnection("other", "secret")).willReturn(otherUserConnection);
+		ReplicaRoutingDataSource routing = routing();
+
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		Assert.assertSame(otherUserConnection, ((ConnectionProxy) routing.getConnection("other", "secret")).getTargetConnection());
+	}
+
+	private ReplicaRoutingDataSource routing() {
+		ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas, MAX_LAG, 0);
+		routing.afterPropertiesSet();
+		return routing;
+	}
+
+	/**
+	 * @return the connection actually taken , the lazy connection takes it now
+	 */
+	private static Connection targetConnection(DataSource dataSource) {
+		return ((ConnectionProxy) DataSourceUtils.getConnection(dataSource)).getTargetConnection();
+	}
+
+	private void replica(String name, long lag) throws SQLException {
+		ResultSet lagResult = mock(ResultSet.class);
+		given(lagResult.next()).willReturn(true);
+		given(lagResult.getLong(1)).willReturn(lag);
+		DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+		given(metaData.getDatabaseMajorVersion()).willReturn(10);
+		Connection connection = mock(Connection.class);
+		given(connection.getMetaData()).willReturn(metaData);
+		Statement statement = statement(lagResult);
+		given(connection.createStatement()).willReturn(statement);
+		DataSource dataSource = mock(DataSource.class);
+		given(dataSource.getConnection()).willReturn(connection);
+		replicas.put(name, dataSource);
+		replicaConnections.put(name, connection);
+		replicaLags.put(name, lagResult);
+	}
+
+	private static Statement statement(ResultSet lagResult) throws SQLException {
+		Statement statement = mock(Statement.class);
+		given(statement.executeQuery(anyString())).willReturn(lagResult);
+		return statement;
+	}
+}
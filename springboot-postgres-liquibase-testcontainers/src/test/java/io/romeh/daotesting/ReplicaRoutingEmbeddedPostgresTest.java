@@ -0,0 +1,223 @@
+package io.romeh.daotesting;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import de.flapdoodle.embed.process.runtime.Network;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.romeh.daotesting.config.EmbeddedPostgresStarter;
+import io.romeh.daotesting.config.ReplicaRoutingDataSource;
+import io.romeh.daotesting.dao.CustomerRepository;
+import io.romeh.daotesting.domain.Customer;
+import ru.yandex.qatools.embed.postgresql.PostgresProcess;
+import ru.yandex.qatools.embed.postgresql.config.AbstractPostgresConfig;
+import ru.yandex.qatools.embed.postgresql.config.PostgresConfig;
+import ru.yandex.qatools.embed.postgresql.distribution.Version;
+
+/**
+ * @author romeh
+ * the routing of the reads between two embedded postgres processes , a primary and a replica started like the ones of the application ,
+ * the replica does not replicate the primary , so a row written through the routing data source is only found by the reads of the primary ,
+ * the repository reads go through the jpa stack of the application , the read only jpa transactions of the repository reach the replica ,
+ * postgres refuses to start as root so the test is skipped when run as root
+ */
+public class ReplicaRoutingEmbeddedPostgresTest {
+
+	private static final long MAX_LAG = 1000;
+	private static final String COUNT_BY_NAME = "SELECT count(*) FROM customer WHERE name = ?";
+	private static final String INSERT_CUSTOMER = "INSERT INTO customer (id, name, address, is_active)"
+			+ " VALUES (nextval('customer_id_seq'), ?, 'address', true) RETURNING id";
+
+	private static EmbeddedPostgresStarter starter;
+	private static PostgresProcess primary;
+	private static PostgresProcess replica;
+
+	private ReplicaRoutingDataSource routing;
+	private JdbcTemplate jdbcTemplate;
+	private TransactionTemplate transactionTemplate;
+
+	@BeforeClass
+	public static void startPostgres() throws IOException {
+		Assume.assumeFalse("postgres does not start as root", "root".equals(System.getProperty("user.name")));
+		starter = new EmbeddedPostgresStarter(Paths.get(System.getProperty("user.home"), ".embedpostgresql", "customer-service"), true,
+				new DefaultResourceLoader(), "classpath:/db/changelog/changelog-master.xml", "default");
+		primary = starter.start(postgresConfig());
+		replica = starter.startReplica(postgresConfig());
+	}
+
+	@AfterClass
+	public static void stopPostgres() {
+		if (replica != null) {
+			replica.stop();
+		}
+		if (primary != null) {
+			primary.stop();
+		}
+		if (starter != null) {
+			starter.destroy();
+		}
+	}
+
+	@Before
+	public void setUp() {
+		routing = routing(replica);
+		jdbcTemplate = new JdbcTemplate(routing);
+		transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(routing));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		routing.destroy();
+	}
+
+	@Test
+	public void shouldReadTheReplicaUnlessTheReadIsFromThePrimary() {
+		Assert.assertEquals(Collections.singletonList("replica"), routing.getReplicasInRotation());
+		String name = "routed-" + System.nanoTime();
+		transactionTemplate.execute(status -> jdbcTemplate.queryForObject(INSERT_CUSTOMER, Long.class, name));
+
+		transactionTemplate.setReadOnly(true);
+		Assert.assertEquals(port(replica), transactionTemplate.execute(status -> jdbcTemplate.queryForObject("SHOW port", String.class)));
+		Assert.assertEquals(Integer.valueOf(0), transactionTemplate.execute(status -> jdbcTemplate.queryForObject(COUNT_BY_NAME, Integer.class, name)));
+		Assert.assertEquals(Integer.valueOf(1), ReplicaRoutingDataSource.readFromPrimary(() ->
+				transactionTemplate.execute(status -> jdbcTemplate.queryForObject(COUNT_BY_NAME, Integer.class, name))));
+	}
+
+	@Test
+	public void shouldReadTheRepositoryFromTheReplicaInItsReadOnlyJpaTransactions() {
+		MeterRegistry meterRegistry = new SimpleMeterRegistry();
+		routing.bindTo(meterRegistry);
+		String name = "jpa-routed-" + System.nanoTime();
+		long id = transactionTemplate.execute(status -> jdbcTemplate.queryForObject(INSERT_CUSTOMER, Long.class, name));
+
+		try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+			context.registerBean(DataSource.class, () -> routing);
+			context.register(JpaConfig.class);
+			context.refresh();
+			CustomerRepository customerRepository = context.getBean(CustomerRepository.class);
+			double primaryConnections = routedConnections(meterRegistry, "primary");
+
+			// the row written on the primary only is not on the replica
+			Assert.assertFalse(customerRepository.findById(id).isPresent());
+			Assert.assertEquals(1, routedConnections(meterRegistry, "replica"), 0);
+			Assert.assertEquals(primaryConnections, routedConnections(meterRegistry, "primary"), 0);
+
+			Assert.assertEquals(name, ReplicaRoutingDataSource.readFromPrimary(() -> customerRepository.findById(id)).get().getName());
+			Assert.assertEquals(1, routedConnections(meterRegistry, "replica"), 0);
+			Assert.assertEquals(primaryConnections + 1, routedConnections(meterRegistry, "primary"), 0);
+		}
+	}
+
+	@Test
+	public void shouldReadThePrimaryOnceTheReplicaIsDown() throws Exception {
+		PostgresProcess stoppedReplica = starter.startReplica(postgresConfig());
+		ReplicaRoutingDataSource failingOver = routing(stoppedReplica);
+		try {
+			TransactionTemplate readOnly = new TransactionTemplate(new DataSourceTransactionManager(failingOver));
+			readOnly.setReadOnly(true);
+			JdbcTemplate failingOverJdbc = new JdbcTemplate(failingOver);
+			Assert.assertEquals(port(stoppedReplica), readOnly.execute(status -> failingOverJdbc.queryForObject("SHOW port", String.class)));
+
+			stoppedReplica.stop();
+			failingOver.checkReplicas();
+			Assert.assertEquals(Collections.emptyList(), failingOver.getReplicasInRotation());
+			Assert.assertEquals(port(primary), readOnly.execute(status -> failingOverJdbc.queryForObject("SHOW port", String.class)));
+		} finally {
+			failingOver.destroy();
+		}
+	}
+
+	private static double routedConnections(MeterRegistry meterRegistry, String target) {
+		return meterRegistry.get("db.routing.connections").tag("target", target).functionCounter().count();
+	}
+
+	private static ReplicaRoutingDataSource routing(PostgresProcess replica) {
+		HikariDataSource replicaPool = pool(replica);
+		replicaPool.setReadOnly(true);
+		replicaPool.setConnectionTimeout(1000);
+		ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(pool(primary), Collections.singletonMap("replica", replicaPool), MAX_LAG, 0);
+		routing.afterPropertiesSet();
+		return routing;
+	}
+
+	private static HikariDataSource pool(PostgresProcess process) {
+		PostgresConfig config = process.getConfig();
+		HikariDataSource pool = new HikariDataSource();
+		pool.setJdbcUrl(String.format("jdbc:postgresql://%s:%s/%s", config.net().host(), config.net().port(), config.storage().dbName()));
+		pool.setUsername(config.credentials().username());
+		pool.setPassword(config.credentials().password());
+		pool.setMaximumPoolSize(2);
+		return pool;
+	}
+
+	private static String port(PostgresProcess process) {
+		return String.valueOf(process.getConfig().net().port());
+	}
+
+	/**
+	 * the postgres config of the application , on a free port
+	 */
+	private static PostgresConfig postgresConfig() throws IOException {
+		PostgresConfig config = new PostgresConfig(Version.V9_6_8,
+				new AbstractPostgresConfig.Net("localhost", Network.getFreeServerPort()),
+				new AbstractPostgresConfig.Storage("test"),
+				new AbstractPostgresConfig.Timeout(),
+				new AbstractPostgresConfig.Credentials("user", "pass"));
+		config.getAdditionalInitDbParams().addAll(Arrays.asList("--nosync", "--locale=en_US.UTF-8"));
+		return config;
+	}
+
+	/**
+	 * the jpa stack of the application over the routing data source
+	 */
+	@Configuration
+	@EnableJpaRepositories(basePackageClasses = {CustomerRepository.class})
+	static class JpaConfig {
+
+		@Bean
+		public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+			LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+			entityManagerFactory.setDataSource(dataSource);
+			entityManagerFactory.setPackagesToScan(Customer.class.getPackage().getName());
+			entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+			Properties properties = new Properties();
+			properties.put("hibernate.temp.use_jdbc_metadata_defaults", "false");
+			properties.put("hibernate.dialect", "org.hibernate.dialect.PostgreSQL95Dialect");
+			entityManagerFactory.setJpaProperties(properties);
+			return entityManagerFactory;
+		}
+
+		@Bean
+		public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+			return new JpaTransactionManager(entityManagerFactory);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package io.romeh.daotesting;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+
+import org.junit.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerOpenException;
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.CustomerBulkImporter;
+import io.romeh.daotesting.rest.CustomerJsonCache;
+import io.romeh.daotesting.rest.CustomerJsonCache.CustomerJson;
+import io.romeh.daotesting.rest.DbUnavailableAdvice;
+import io.romeh.daotesting.rest.RestAPI;
+import io.romeh.daotesting.rest.dto.CustomerMapperImpl;
+import io.romeh.daotesting.service.CustomerService;
+
+/**
+ * @author romeh
+ * the customer version as ETag , the 304 of the conditional GET and the If-Match of the update ,
+ * and the 503 of a rejected db call
+ */
+public class RestAPIConditionalRequestTest {
+
+	private static final String JSON = "{\"id\":1,\"name\":\"TestRomeh\",\"address\":\"Brussels\",\"_active\":false}";
+	private static final String UPDATE = "{\"name\":\"Renamed\",\"address\":\"Brussels\"}";
+
+	private final CustomerService customerService = mock(CustomerService.class);
+	private final CustomerJsonCache customerJsonCache = mock(CustomerJsonCache.class);
+	private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new RestAPI(customerService, new CustomerMapperImpl(),
+			mock(CustomerBulkImporter.class), customerJsonCache, Jackson2ObjectMapperBuilder.json().build(), 3600000))
+			.setControllerAdvice(new DbUnavailableAdvice())
+			.build();
+
+	@Test
+	public void shouldAnswerAMatchingIfNoneMatchWithoutTheBody() throws Exception {
+		given(customerJsonCache.findCustomerJsonById(1)).willReturn(new CustomerJson(3, JSON.getBytes(StandardCharsets.UTF_8)));
+		given(customerJsonCache.findCustomerVersionById(1)).willReturn(Optional.of(3L));
+
+		mockMvc.perform(get("/customers/1"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+				.andExpect(content().json(JSON));
+		mockMvc.perform(get("/customers/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+				.andExpect(status().isNotModified())
+				.andExpect(content().string(""));
+		mockMvc.perform(get("/customers/1").header(HttpHeaders.IF_NONE_MATCH, "\"2\""))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+		// the If-None-Match is a weak comparison , of a list or *
+		for (String ifNoneMatch : Arrays.asList("W/\"3\"", "\"2\", \"3\"", "*")) {
+			mockMvc.perform(get("/customers/1").header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch))
+					.andExpect(status().isNotModified())
+					.andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+		}
+
+		// the 304 are answered from the version only , the json is read by the 200 only
+		verify(customerJsonCache, times(2)).findCustomerJsonById(1);
+	}
+
+	@Test
+	public void shouldNotFindAMissingCustomerOfAnIfNoneMatch() throws Exception {
+		mockMvc.perform(get("/customers/2").header(HttpHeaders.IF_NONE_MATCH, "*"))
+				.andExpect(status().isNotFound());
+
+		verify(customerJsonCache, never()).findCustomerJsonById(2);
+	}
+
+	@Test
+	public void shouldUpdateTheVersionOfTheIfMatch() throws Exception {
+		given(customerService.updateCustomer(Customer.builder().id(1).name("Renamed").address("Brussels").version(3).build()))
+				.willReturn(Optional.of(4L));
+
+		mockMvc.perform(put("/customers/1").contentType(MediaType.APPLICATION_JSON).content(UPDATE).header(HttpHeaders.IF_MATCH, "\"3\""))
+				.andExpect(status().isNoContent())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+	}
+
+	@Test
+	public void shouldUpdateAnyVersionOfAStarIfMatch() throws Exception {
+		given(customerService.updateCustomerIfVersionIn(Customer.builder().id(1).name("Renamed").address("Brussels").build(), null))
+				.willReturn(Optional.of(6L));
+
+		mockMvc.perform(put("/customers/1").contentType(MediaType.APPLICATION_JSON).content(UPDATE).header(HttpHeaders.IF_MATCH, "*"))
+				.andExpect(status().isNoContent())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"6\""));
+	}
+
+	@Test
+	public void shouldUpdateOneOfTheVersionsOfAnIfMatchList() throws Exception {
+		given(customerService.updateCustomerIfVersionIn(Customer.builder().id(1).name("Renamed").address("Brussels").build(),
+				new HashSet<>(Arrays.asList(3L, 4L)))).willReturn(Optional.of(5L));
+		given(customerService.updateCustomer(Customer.builder().id(1).name("Renamed").address("Brussels").version(4).build()))
+				.willReturn(Optional.of(5L));
+
+		mockMvc.perform(put("/customers/1").contentType(MediaType.APPLICATION_JSON).content(UPDATE).header(HttpHeaders.IF_MATCH, "\"3\", \"4\""))
+				.andExpect(status().isNoContent())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"5\""));
+		// the weak ETags of a list are left out
+		mockMvc.perform(put("/customers/1").contentType(MediaType.APPLICATION_JSON).content(UPDATE).header(HttpHeaders.IF_MATCH, "W/\"3\", \"4\""))
+				.andExpect(status().isNoContent())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"5\""));
+	}
+
+	@Test
+	public void shouldNeverMatchAWeakIfMatch() throws Exception {
+		mockMvc.perform(put("/customers/1").contentType(MediaType.APPLICATION_JSON).content(UPDATE).header(HttpHeaders.IF_MATCH, "W/\"3\""))
+				.andExpect(status().isPreconditionFailed());
+
+		verify(customerService, never()).updateCustomer(any());
+		verify(customerService, never()).updateCustomerIfVersionIn(any(), any());
+	}
+
+	@Test
+	public void shouldRejectTheUpdateOfAnOlderVersion() throws Exception {
+		given(customerService.updateCustomer(any())).willThrow(new OptimisticLockingFailureException("the customer 1 is not at the version 2 anymore"));
+
+		mockMvc.perform(put("/customers/1").contentType(MediaType.APPLICATION_JSON).content(UPDATE).header(HttpHeaders.IF_MATCH, "\"2\""))
+				.andExpect(status().isPreconditionFailed());
+	}
+
+	@Test
+	public void shouldRequireAnIfMatchToUpdate() throws Exception {
+		mockMvc.perform(put("/customers/1").contentType(MediaType.APPLICATION_JSON).content(UPDATE))
+				.andExpect(status().isPreconditionRequired());
+		mockMvc.perform(put("/customers/1").contentType(MediaType.APPLICATION_JSON).content(UPDATE).header(HttpHeaders.IF_MATCH, "\"abc\""))
+				.andExpect(status().isPreconditionFailed());
+
+		verify(customerService, never()).updateCustomer(any());
+	}
+
+	@Test
+	public void shouldNotFindAMissingCustomerToUpdate() throws Exception {
+		given(customerService.updateCustomer(any())).willReturn(Optional.empty());
+
+		mockMvc.perform(put("/customers/2").contentType(MediaType.APPLICATION_JSON).content(UPDATE).header(HttpHeaders.IF_MATCH, "\"0\""))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void shouldAnswerARejectedDbCallWithServiceUnavailable() throws Exception {
+		given(customerJsonCache.findCustomerJsonById(1)).willThrow(new CircuitBreakerOpenException("CircuitBreaker 'customerDb' is OPEN"));
+
+		mockMvc.perform(get("/customers/1"))
+				.andExpect(status().isServiceUnavailable())
+				.andExpect(content().json("{\"message\":\"the customer db is unavailable , retry later\"}"));
+	}
+}
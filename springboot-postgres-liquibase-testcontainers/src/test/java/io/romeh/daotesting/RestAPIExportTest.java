@@ -0,0 +1,59 @@
+package io.romeh.daotesting;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.function.Consumer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import io.romeh.daotesting.domain.Customer;
+import io.romeh.daotesting.rest.CustomerBulkImporter;
+import io.romeh.daotesting.rest.CustomerJsonCache;
+import io.romeh.daotesting.rest.RestAPI;
+import io.romeh.daotesting.rest.dto.CustomerMapperImpl;
+import io.romeh.daotesting.service.CustomerService;
+
+/**
+ * @author romeh
+ * the streamed JSON lines of the export , under its own async timeout
+ */
+public class RestAPIExportTest {
+
+	private final CustomerService customerService = mock(CustomerService.class);
+	private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new RestAPI(customerService, new CustomerMapperImpl(),
+			mock(CustomerBulkImporter.class), mock(CustomerJsonCache.class), Jackson2ObjectMapperBuilder.json().build(), 120000)).build();
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void shouldStreamTheCustomersUnderTheExportTimeout() throws Exception {
+		willAnswer(invocation -> {
+			Consumer<Customer> consumer = invocation.getArgument(0);
+			consumer.accept(Customer.builder().id(1).name("one").address("Brussels").build());
+			consumer.accept(Customer.builder().id(2).name("two").address("Ghent").build());
+			return null;
+		}).given(customerService).exportCustomers(any(Consumer.class));
+
+		MvcResult export = mockMvc.perform(get("/customers/export"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		Assert.assertEquals(120000, export.getRequest().getAsyncContext().getTimeout());
+
+		mockMvc.perform(asyncDispatch(export))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(RestAPI.APPLICATION_NDJSON_VALUE))
+				.andExpect(content().string("{\"id\":1,\"name\":\"one\",\"address\":\"Brussels\",\"_active\":false}\n"
+						+ "{\"id\":2,\"name\":\"two\",\"address\":\"Ghent\",\"_active\":false}"));
+	}
+}
@@ -0,0 +1,56 @@
+package io.romeh.daotesting;
+
+import static java.lang.String.format;
+
+import java.time.Duration;
+
+import org.testcontainers.containers.PostgreSQLContainer;
+
+/**
+ * @author romeh
+ * the postgres container of the db tests , started once per jvm by its first user and shared by all the test classes ,
+ * the test classes do not stop it , the testcontainers reaper removes it when the jvm exits
+ */
+public final class SharedPostgreSQLContainer extends PostgreSQLContainer<SharedPostgreSQLContainer> {
+
+	private static SharedPostgreSQLContainer instance;
+
+	private SharedPostgreSQLContainer() {
+		super("postgres:11.2");
+	}
+
+	/**
+	 * @return the started shared container
+	 */
+	public static synchronized SharedPostgreSQLContainer getInstance() {
+		if (instance == null) {
+			instance = new SharedPostgreSQLContainer()
+					.withDatabaseName("test")
+					.withUsername("user")
+					.withPassword("pass")
+					.withStartupTimeout(Duration.ofSeconds(600));
+			instance.start();
+		}
+		return instance;
+	}
+
+	/**
+	 * @return the jdbc url of the database of the container
+	 */
+	public String getDatabaseUrl() {
+		return getDatabaseUrl(getDatabaseName());
+	}
+
+	/**
+	 * @param database a database of the container
+	 * @return the jdbc url of the database
+	 */
+	public String getDatabaseUrl(String database) {
+		return format("jdbc:postgresql://%s:%s/%s", getContainerIpAddress(), getMappedPort(POSTGRESQL_PORT), database);
+	}
+
+	@Override
+	public void stop() {
+		// shared by the following test classes of the jvm , left to the reaper
+	}
+}
@@ -0,0 +1,75 @@
+package io.romeh.daotesting.resilience;
+
+import java.time.Duration;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * @author romeh
+ */
+public class CircuitBreakerMetersTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final CircuitBreaker circuitBreaker = CircuitBreaker.of("db", CircuitBreakerConfig.custom()
+			.ringBufferSizeInClosedState(2)
+			.failureRateThreshold(50)
+			.waitDurationInOpenState(Duration.ofMinutes(1))
+			.build());
+
+	@Test
+	public void shouldExportTheStateAndTheTransitions() {
+		new CircuitBreakerMeters(circuitBreaker).bindTo(meterRegistry);
+		Assert.assertEquals(1.0, state("closed"), 0.0);
+
+		circuitBreaker.onError(0, new IllegalStateException("db down"));
+		circuitBreaker.onError(0, new IllegalStateException("db down"));
+
+		Assert.assertEquals(0.0, state("closed"), 0.0);
+		Assert.assertEquals(1.0, state("open"), 0.0);
+		Assert.assertEquals(1.0, meterRegistry.get(CircuitBreakerMeters.TRANSITIONS)
+				.tags("name", "db", "from", "closed", "to", "open").counter().count(), 0.0);
+		circuitBreaker.transitionToHalfOpenState();
+		Assert.assertEquals(1.0, state("half_open"), 0.0);
+		Assert.assertEquals(1.0, meterRegistry.get(CircuitBreakerMeters.TRANSITIONS)
+				.tags("name", "db", "from", "open", "to", "half_open").counter().count(), 0.0);
+	}
+
+	@Test
+	public void shouldCountTheCallsNotPermitted() {
+		new CircuitBreakerMeters(circuitBreaker).bindTo(meterRegistry);
+		circuitBreaker.transitionToOpenState();
+
+		Assert.assertFalse(circuitBreaker.isCallPermitted());
+		Assert.assertFalse(circuitBreaker.isCallPermitted());
+
+		Assert.assertEquals(2.0, meterRegistry.get(CircuitBreakerMeters.NOT_PERMITTED).tag("name", "db").counter().count(), 0.0);
+	}
+
+	@Test
+	public void shouldCountTheBulkheadRejections() {
+		Bulkhead bulkhead = Bulkhead.of("db", BulkheadConfig.custom()
+				.maxConcurrentCalls(1)
+				.maxWaitTime(0)
+				.build());
+		new BulkheadMeters(bulkhead).bindTo(meterRegistry);
+
+		Assert.assertTrue(bulkhead.isCallPermitted());
+		Assert.assertEquals(0.0, meterRegistry.get(BulkheadMeters.AVAILABLE_CONCURRENT_CALLS).gauge().value(), 0.0);
+		Assert.assertFalse(bulkhead.isCallPermitted());
+		bulkhead.onComplete();
+
+		Assert.assertEquals(1.0, meterRegistry.get(BulkheadMeters.AVAILABLE_CONCURRENT_CALLS).gauge().value(), 0.0);
+		Assert.assertEquals(1.0, meterRegistry.get(BulkheadMeters.REJECTED).tag("name", "db").counter().count(), 0.0);
+	}
+
+	private double state(String state) {
+		return meterRegistry.get(CircuitBreakerMeters.STATE).tags("name", "db", "state", state).gauge().value();
+	}
+}
@@ -0,0 +1,117 @@
+package io.romeh.daotesting.resilience;
+
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vavr.control.Try;
+
+/**
+ * @author romeh
+ */
+public class HedgedExecutorTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final ShardedScheduledExecutorService scheduler = new ShardedScheduledExecutorService(1, "hedge-timer-");
+	private final CountDownLatch releaseSlowAttempt = new CountDownLatch(1);
+
+	@After
+	public void tearDown() {
+		releaseSlowAttempt.countDown();
+		executor.shutdownNow();
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void shouldTakeTheHedgeResultWhenTheFirstAttemptIsSlow() throws Exception {
+		HedgedExecutor hedgedExecutor = hedgedExecutor(1);
+		AtomicInteger attempts = new AtomicInteger();
+
+		String result = hedgedExecutor.executeSupplier(() -> attempts.incrementAndGet() == 1 ? slowHello() : "fast hello")
+				.get(5, TimeUnit.SECONDS);
+
+		Assert.assertEquals("fast hello", result);
+		Assert.assertEquals(2, attempts.get());
+		Assert.assertEquals(1, calls("hedge_won"), 0.0);
+	}
+
+	@Test
+	public void shouldNotHedgeTheFastCalls() throws Exception {
+		HedgedExecutor hedgedExecutor = hedgedExecutor(1);
+		AtomicInteger attempts = new AtomicInteger();
+
+		String result = hedgedExecutor.executeSupplier(() -> {
+			attempts.incrementAndGet();
+			return "fast hello";
+		}).get(5, TimeUnit.SECONDS);
+
+		Assert.assertEquals("fast hello", result);
+		Assert.assertEquals(1, attempts.get());
+		Assert.assertEquals(1, calls("not_hedged"), 0.0);
+	}
+
+	@Test
+	public void shouldNotHedgeOnceTheHedgeBudgetIsSpent() {
+		HedgedExecutor hedgedExecutor = hedgedExecutor(0);
+		AtomicInteger attempts = new AtomicInteger();
+
+		Try<String> result = Try.of(() -> hedgedExecutor.<String>executeSupplier(() -> {
+			attempts.incrementAndGet();
+			return slowHello();
+		}).get(200, TimeUnit.MILLISECONDS));
+
+		Assert.assertTrue(result.isFailure());
+		Assert.assertEquals(1, attempts.get());
+		Assert.assertEquals(1, meterRegistry.get(HedgedExecutor.REJECTED).functionCounter().count(), 0.0);
+	}
+
+	@Test
+	public void shouldFailOnlyOnceBothAttemptsFailed() {
+		HedgedExecutor hedgedExecutor = hedgedExecutor(1);
+		AtomicInteger attempts = new AtomicInteger();
+
+		Try<String> result = Try.of(() -> hedgedExecutor.<String>executeSupplier(() -> {
+			if (attempts.incrementAndGet() == 1) {
+				slowHello();
+				throw new IllegalStateException("slow BAM!");
+			}
+			throw new IllegalStateException("fast BAM!");
+		}).get(5, TimeUnit.SECONDS));
+
+		Assert.assertTrue(result.isFailure());
+		Assert.assertEquals(2, attempts.get());
+		Assert.assertEquals(1, calls("failed"), 0.0);
+		// the hedge failed first , the call waited for the first attempt
+		Assert.assertEquals("slow BAM!", result.getCause().getCause().getMessage());
+	}
+
+	/**
+	 * a fixed 50 ms hedge delay
+	 */
+	private HedgedExecutor hedgedExecutor(double maxHedgeRatio) {
+		HedgeConfig hedgeConfig = HedgeConfig.custom()
+				.delayBounds(Duration.ofMillis(50), Duration.ofMillis(50))
+				.maxHedgeRatio(maxHedgeRatio, Duration.ofSeconds(10))
+				.build();
+		return HedgedExecutor.of("hello", hedgeConfig, executor, scheduler, meterRegistry);
+	}
+
+	private String slowHello() {
+		Try.run(() -> releaseSlowAttempt.await(500, TimeUnit.MILLISECONDS));
+		return "slow hello";
+	}
+
+	private double calls(String outcome) {
+		return meterRegistry.get(HedgedExecutor.CALLS).tag("name", "hello").tag("outcome", outcome).counter().count();
+	}
+}
@@ -0,0 +1,114 @@
+package io.romeh.daotesting.resilience;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willThrow;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import io.github.resilience4j.retry.AsyncRetry;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vavr.control.Try;
+
+/**
+ * @author romeh
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class MeteredRetryTest {
+	@Mock
+	private Runnable dbCall;
+	@Mock
+	private Supplier<CompletionStage<String>> asyncDbCall;
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private final RetryConfig retryConfig = RetryConfig.custom()
+			.maxAttempts(3)
+			.waitDuration(Duration.ofMillis(50))
+			.build();
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void shouldRecordACallWithoutRetry() {
+		MeteredRetry retry = MeteredRetry.of(Retry.of("hello", retryConfig), meterRegistry);
+
+		retry.decorateRunnable(dbCall).run();
+
+		then(dbCall).should(Mockito.times(1)).run();
+		Assert.assertEquals(1, calls("successful_without_retry"), 0.0);
+		Assert.assertEquals(1, meterRegistry.get(RetryMeters.ATTEMPTS).summary().totalAmount(), 0.0);
+		// only the retried calls wait
+		Assert.assertEquals(0, meterRegistry.get(RetryMeters.BACKOFF).timer().count());
+		Assert.assertEquals(1, meterRegistry.get(RetryMeters.ADDED_LATENCY).timer().count());
+	}
+
+	@Test
+	public void shouldRecordTheBackoffOfACallSuccessfulAfterRetry() {
+		willThrow(new IllegalStateException("BAM!")).willDoNothing().given(dbCall).run();
+		MeteredRetry retry = MeteredRetry.of(Retry.of("hello", retryConfig), meterRegistry);
+
+		retry.decorateRunnable(dbCall).run();
+
+		then(dbCall).should(Mockito.times(2)).run();
+		Assert.assertEquals(1, calls("successful_with_retry"), 0.0);
+		Assert.assertEquals(2, meterRegistry.get(RetryMeters.ATTEMPTS).summary().totalAmount(), 0.0);
+		Assert.assertTrue(meterRegistry.get(RetryMeters.BACKOFF).timer().totalTime(TimeUnit.MILLISECONDS) >= 50);
+		Assert.assertTrue(meterRegistry.get(RetryMeters.ADDED_LATENCY).timer().totalTime(TimeUnit.MILLISECONDS) >= 50);
+	}
+
+	@Test
+	public void shouldRecordAnExhaustedCall() {
+		willThrow(new IllegalStateException("BAM!")).given(dbCall).run();
+		MeteredRetry retry = MeteredRetry.of(Retry.of("hello", retryConfig), meterRegistry);
+
+		Try<Void> result = Try.run(retry.decorateRunnable(dbCall)::run);
+
+		Assert.assertTrue(result.failed().get() instanceof IllegalStateException);
+		Assert.assertEquals(1, calls("failed_with_retry"), 0.0);
+		Assert.assertEquals(3, meterRegistry.get(RetryMeters.ATTEMPTS).summary().totalAmount(), 0.0);
+		// two waits between the three attempts
+		Assert.assertTrue(meterRegistry.get(RetryMeters.BACKOFF).timer().totalTime(TimeUnit.MILLISECONDS) >= 100);
+	}
+
+	@Test
+	public void shouldRecordTheAsyncRetries() throws Exception {
+		CompletableFuture<String> failedFuture = new CompletableFuture<>();
+		failedFuture.completeExceptionally(new IllegalStateException("BAM!"));
+		given(asyncDbCall.get())
+				.willReturn(failedFuture)
+				.willReturn(completedFuture("Hello world"));
+		MeteredAsyncRetry retry = MeteredAsyncRetry.of(AsyncRetry.of("asyncHello", retryConfig), scheduler, meterRegistry);
+
+		String result = retry.decorateCompletionStage(asyncDbCall).get().toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+		Assert.assertEquals("Hello world", result);
+		Assert.assertEquals(1, meterRegistry.get(RetryMeters.CALLS).tag("name", "asyncHello").tag("kind", "successful_with_retry")
+				.counter().count(), 0.0);
+		Assert.assertEquals(2, meterRegistry.get(RetryMeters.ATTEMPTS).summary().totalAmount(), 0.0);
+		Assert.assertTrue(meterRegistry.get(RetryMeters.BACKOFF).timer().totalTime(TimeUnit.MILLISECONDS) >= 50);
+	}
+
+	private double calls(String kind) {
+		return meterRegistry.get(RetryMeters.CALLS).tag("name", "hello").tag("kind", kind).counter().count();
+	}
+}
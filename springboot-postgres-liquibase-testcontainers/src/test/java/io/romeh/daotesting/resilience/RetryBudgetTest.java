@@ -0,0 +1,135 @@
+package io.romeh.daotesting.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.github.resilience4j.retry.IntervalFunction;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vavr.control.Try;
+
+/**
+ * @author romeh
+ * simulate one minute of 1000 calls per second against a db which is down from the 20th to the 40th second ,
+ * the retries are not waiting as the simulated clock drives the budget
+ */
+public class RetryBudgetTest {
+
+	private static final int CALLS_PER_SECOND = 1000;
+	private static final int OUTAGE_START = 20;
+	private static final int OUTAGE_END = 40;
+	private static final int SIMULATED_SECONDS = 60;
+
+	private final AtomicLong clock = new AtomicLong();
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final RetryConfig retryConfig = RetryConfig.custom()
+			.maxAttempts(3)
+			.intervalFunction(noWait())
+			.build();
+
+	@Test
+	public void shouldTripleTheLoadDuringAnOutageWithoutBudget() {
+		MeteredRetry retry = MeteredRetry.of(Retry.of("db", retryConfig), meterRegistry);
+
+		long[] dbCallsPerSecond = simulate(retry);
+
+		Assert.assertEquals(CALLS_PER_SECOND, dbCallsPerSecond[OUTAGE_START - 1]);
+		Assert.assertEquals(3 * CALLS_PER_SECOND, dbCallsPerSecond[OUTAGE_START + 5]);
+		Assert.assertEquals(3.0, amplification(dbCallsPerSecond, OUTAGE_START, OUTAGE_END), 0.001);
+	}
+
+	@Test
+	public void shouldBoundTheLoadDuringAnOutageWithABudget() {
+		RetryBudget retryBudget = new RetryBudget(0.1, 10, Duration.ofSeconds(10), clock::get);
+		MeteredRetry retry = MeteredRetry.of("db", retryConfig, retryBudget, meterRegistry);
+
+		long[] dbCallsPerSecond = simulate(retry);
+
+		// no retry while the db is up
+		Assert.assertEquals(1.0, amplification(dbCallsPerSecond, 0, OUTAGE_START), 0.001);
+		Assert.assertEquals(1.0, amplification(dbCallsPerSecond, OUTAGE_END, SIMULATED_SECONDS), 0.001);
+		// the tokens saved before the outage are spent first , then the retries are capped to 10% of the calls plus the reserve
+		Assert.assertTrue(amplification(dbCallsPerSecond, OUTAGE_START, OUTAGE_END) < 1.2);
+		Assert.assertTrue(amplification(dbCallsPerSecond, OUTAGE_START + 10, OUTAGE_END) <= 1.11 + 0.001);
+		Assert.assertTrue(amplification(dbCallsPerSecond, OUTAGE_START, OUTAGE_END) > 1.0);
+		Assert.assertTrue(retryBudget.getRejectedRetryCount() > 0);
+		Assert.assertEquals((double) retryBudget.getRejectedRetryCount(),
+				meterRegistry.get(RetryMeters.BUDGET_REJECTED).functionCounter().count(), 0.0);
+	}
+
+	@Test
+	public void shouldLetTheLowTrafficCallsRetryWithTheReserve() {
+		RetryBudget retryBudget = new RetryBudget(0.1, 10, Duration.ofSeconds(10), clock::get);
+
+		// 100 retries in the window whatever the number of calls
+		Assert.assertEquals(100, retryBudget.getAvailableRetries());
+		for (int i = 0; i < 100; i++) {
+			retryBudget.recordRetry();
+		}
+		Assert.assertEquals(0, retryBudget.getAvailableRetries());
+		// the retries leave the window after 10 seconds
+		clock.addAndGet(TimeUnit.SECONDS.toNanos(11));
+		Assert.assertEquals(100, retryBudget.getAvailableRetries());
+	}
+
+	@Test
+	public void shouldOnlyCountTheRejectionsOfTheCallsWithAttemptsLeft() {
+		// 2 retries in the window and no token per call
+		RetryBudget retryBudget = new RetryBudget(0, 1, Duration.ofSeconds(2), clock::get);
+		MeteredRetry retry = MeteredRetry.of("db", retryConfig, retryBudget, meterRegistry);
+		AtomicLong dbCalls = new AtomicLong();
+		Supplier<String> dbDown = retry.decorateSupplier(() -> {
+			dbCalls.incrementAndGet();
+			throw new IllegalStateException("db down");
+		});
+
+		// the 3 attempts of the first call spend the budget , the last one would not have been retried anyway
+		Assert.assertTrue(Try.ofSupplier(dbDown).isFailure());
+		Assert.assertEquals(3, dbCalls.get());
+		Assert.assertEquals(0, retryBudget.getRejectedRetryCount());
+		// the second call could have retried but the budget is spent
+		Assert.assertTrue(Try.ofSupplier(dbDown).isFailure());
+		Assert.assertEquals(4, dbCalls.get());
+		Assert.assertEquals(1, retryBudget.getRejectedRetryCount());
+	}
+
+	/**
+	 * @return the db calls of each simulated second
+	 */
+	private long[] simulate(MeteredRetry retry) {
+		long[] dbCallsPerSecond = new long[SIMULATED_SECONDS];
+		for (int second = 0; second < SIMULATED_SECONDS; second++) {
+			int currentSecond = second;
+			boolean dbDown = second >= OUTAGE_START && second < OUTAGE_END;
+			for (int call = 0; call < CALLS_PER_SECOND; call++) {
+				clock.set(TimeUnit.SECONDS.toNanos(second) + call * TimeUnit.SECONDS.toNanos(1) / CALLS_PER_SECOND);
+				Try.ofSupplier(retry.decorateSupplier(() -> {
+					dbCallsPerSecond[currentSecond]++;
+					if (dbDown) {
+						throw new IllegalStateException("db down");
+					}
+					return "customer";
+				}));
+			}
+		}
+		return dbCallsPerSecond;
+	}
+
+	private static double amplification(long[] dbCallsPerSecond, int fromSecond, int toSecond) {
+		long dbCalls = 0;
+		for (int second = fromSecond; second < toSecond; second++) {
+			dbCalls += dbCallsPerSecond[second];
+		}
+		return dbCalls / (double) ((toSecond - fromSecond) * CALLS_PER_SECOND);
+	}
+
+	private static IntervalFunction noWait() {
+		return attempt -> 0L;
+	}
+}
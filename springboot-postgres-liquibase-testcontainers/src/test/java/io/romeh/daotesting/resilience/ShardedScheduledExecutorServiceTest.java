@@ -0,0 +1,89 @@
+package io.romeh.daotesting.resilience;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.mockito.BDDMockito.given;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import io.github.resilience4j.retry.AsyncRetry;
+
+/**
+ * @author romeh
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ShardedScheduledExecutorServiceTest {
+	@Mock
+	private Supplier<CompletionStage<String>> asyncDbCall;
+	private final ShardedScheduledExecutorService scheduler = new ShardedScheduledExecutorService(4, "retry-scheduler-");
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void shouldScheduleTheAsyncRetries() throws Exception {
+		CompletableFuture<String> failedFuture = new CompletableFuture<>();
+		failedFuture.completeExceptionally(new IllegalStateException("BAM!"));
+		given(asyncDbCall.get())
+				.willReturn(failedFuture)
+				.willReturn(completedFuture("Hello world"));
+
+		String result = AsyncRetry.decorateCompletionStage(AsyncRetry.ofDefaults("id"), scheduler, asyncDbCall).get()
+				.toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+		BDDMockito.then(asyncDbCall).should(Mockito.times(2)).get();
+		Assert.assertEquals("Hello world", result);
+	}
+
+	@Test
+	public void shouldRunTheTimersOfAllTheShards() throws InterruptedException {
+		int timerCount = 100_000;
+		CountDownLatch fired = new CountDownLatch(timerCount / 2);
+		Set<String> schedulerThreads = ConcurrentHashMap.newKeySet();
+		List<ScheduledFuture<?>> timers = new ArrayList<>(timerCount);
+		for (int i = 0; i < timerCount; i++) {
+			timers.add(scheduler.schedule(() -> {
+				schedulerThreads.add(Thread.currentThread().getName());
+				fired.countDown();
+			}, 1000 + i % 100, TimeUnit.MILLISECONDS));
+		}
+		// the cancelled timers leave the shard queues right away
+		for (int i = 0; i < timerCount; i += 2) {
+			timers.get(i).cancel(false);
+		}
+		Assert.assertTrue(scheduler.getPendingTaskCount() <= timerCount / 2);
+
+		Assert.assertTrue(fired.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(4, schedulerThreads.size());
+		Assert.assertEquals(0, scheduler.getPendingTaskCount());
+	}
+
+	@Test
+	public void shouldShutdownAllTheShards() throws InterruptedException {
+		scheduler.schedule(() -> {
+		}, 1, TimeUnit.HOURS);
+
+		Assert.assertEquals(1, scheduler.shutdownNow().size());
+		Assert.assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+		Assert.assertTrue(scheduler.isTerminated());
+	}
+}
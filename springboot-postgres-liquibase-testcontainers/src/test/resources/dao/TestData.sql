@@ -1 +1 @@
-INSERT INTO customer VALUES (1,'Brussels','TestRomeh',True );
\ No newline at end of file
+INSERT INTO customer VALUES (1,'Brussels','TestRomeh',True ) ON CONFLICT (id) DO NOTHING;
\ No newline at end of file